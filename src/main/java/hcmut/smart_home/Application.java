@@ -6,16 +6,16 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
 
 import hcmut.smart_home.config.PublicEndpoint;
 import io.swagger.v3.oas.annotations.Operation;
 
 @SpringBootApplication
+@EnableScheduling
 @RestController
 @RequestMapping("/")
 public class Application {
@@ -33,11 +33,6 @@ public class Application {
 		SpringApplication.run(Application.class, args);
 	}
 
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
-
 	@PublicEndpoint
 	@GetMapping
     @Operation(summary = "Get server information", tags = "Application")
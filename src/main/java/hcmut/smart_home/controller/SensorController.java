@@ -1,7 +1,9 @@
 package hcmut.smart_home.controller;
 
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import hcmut.smart_home.dto.SingleResponse;
 import hcmut.smart_home.dto.sensor.FilterResponse;
@@ -20,6 +23,7 @@ import hcmut.smart_home.dto.sensor.PendingRequestResponse;
 import hcmut.smart_home.dto.sensor.SensorInfoResponse;
 import hcmut.smart_home.dto.sensor.UpdateSensorInfoRequest;
 import hcmut.smart_home.dto.user.UserResponse;
+import hcmut.smart_home.service.ChartCache;
 import hcmut.smart_home.service.SensorService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -187,6 +191,8 @@ public class SensorController {
     @ApiResponses(value = { 
         @ApiResponse(responseCode = "200", description = "Filters retrieved successfully",
             content = @Content(schema = @Schema(implementation = FilterResponse[].class))),
+        @ApiResponse(responseCode = "304", description = "Filters not modified since the given ETag",
+            content = @Content()),
         @ApiResponse(responseCode = "400", description = "Invalid field value",
             content = @Content()),
         @ApiResponse(responseCode = "403", description = "User does not have permission to get chart filters",
@@ -225,8 +231,108 @@ public class SensorController {
         @RequestParam(required = false) Integer hour,
 
         @Parameter(description = "Minute for filtering. Required if granularity is minute.")
-        @RequestParam(required = false) Integer minute
+        @RequestParam(required = false) Integer minute,
+
+        WebRequest request
+    ) {
+        ChartCache.Entry chart = sensorService.getChart(userId, List.of(field), min, max, granularity, year, month, day, hour, minute);
+        if (request.checkNotModified(chart.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(cacheControl(chart)).eTag(chart.getEtag()).body(chart.getSeries().get(field));
+    }
+
+    @GetMapping("/chart/series")
+    @ApiResponses(value = { 
+        @ApiResponse(responseCode = "200", description = "Series retrieved successfully",
+            content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "304", description = "Series not modified since the given ETag",
+            content = @Content()),
+        @ApiResponse(responseCode = "400", description = "Invalid field value",
+            content = @Content()),
+        @ApiResponse(responseCode = "403", description = "User does not have permission to get chart series",
+            content = @Content()),
+        @ApiResponse(responseCode = "404", description = "Sensor/User not found",
+            content = @Content()),
+        @ApiResponse(responseCode = "500", description = "Internal server error",
+                content = @Content())
+    })
+    @Operation(summary = "Retrieve the chart series of several fields from a single query", tags = "Sensor")
+    public ResponseEntity<Map<String, List<FilterResponse>>> getChartSeries(
+        @RequestAttribute("userId")     String userId,
+
+        @Parameter(description = "Comma-separated fields to aggregate. Accepted values: temperature, humidity, light_intensity.")
+        @RequestParam(required = true)  List<String> fields,
+
+        @Parameter(description = "Minimum value for filtering. Only allowed with a single field.")
+        @RequestParam(required = false) Double min,
+
+        @Parameter(description = "Maximum value for filtering. Only allowed with a single field.")
+        @RequestParam(required = false) Double max,
+
+        @Parameter(description = "Time granularity for filtering. Accepted values: year, month, day, hour, minute.")
+        @RequestParam(required = true)  String granularity,
+
+        @Parameter(description = "Year for filtering. Required if granularity is year, month, day, hour, or minute.")
+        @RequestParam(required = false) Integer year,
+
+        @Parameter(description = "Month for filtering. Required if granularity is month, day, hour, or minute.")
+        @RequestParam(required = false) Integer month,
+
+        @Parameter(description = "Day for filtering. Required if granularity is day, hour, or minute.")
+        @RequestParam(required = false) Integer day,
+
+        @Parameter(description = "Hour for filtering. Required if granularity is hour or minute.")
+        @RequestParam(required = false) Integer hour,
+
+        @Parameter(description = "Minute for filtering. Required if granularity is minute.")
+        @RequestParam(required = false) Integer minute,
+
+        WebRequest request
+    ) {
+        ChartCache.Entry chart = sensorService.getChart(userId, fields, min, max, granularity, year, month, day, hour, minute);
+        if (request.checkNotModified(chart.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(cacheControl(chart)).eTag(chart.getEtag()).body(chart.getSeries());
+    }
+
+    @GetMapping("/chart/range")
+    @ApiResponses(value = { 
+        @ApiResponse(responseCode = "200", description = "Range retrieved successfully",
+            content = @Content(schema = @Schema(implementation = FilterResponse[].class))),
+        @ApiResponse(responseCode = "400", description = "Invalid range, bucket or field value",
+            content = @Content()),
+        @ApiResponse(responseCode = "403", description = "User does not have permission to get chart range",
+            content = @Content()),
+        @ApiResponse(responseCode = "404", description = "Sensor/User not found",
+            content = @Content()),
+        @ApiResponse(responseCode = "500", description = "Internal server error",
+                content = @Content())
+    })
+    @Operation(summary = "Retrieve sensor data over an arbitrary time range, bucketed or downsampled", tags = "Sensor")
+    public ResponseEntity<List<FilterResponse>> getChartRange(
+        @RequestAttribute("userId")     String userId,
+
+        @Parameter(description = "Field to retrieve. Accepted values: temperature, humidity, light_intensity.")
+        @RequestParam(required = true)  String field,
+
+        @Parameter(description = "Start of the range in epoch seconds (inclusive).")
+        @RequestParam(required = true)  Long from,
+
+        @Parameter(description = "End of the range in epoch seconds (exclusive).")
+        @RequestParam(required = true)  Long to,
+
+        @Parameter(description = "Bucket size in seconds. Either bucket or maxPoints is required.")
+        @RequestParam(required = false) Long bucket,
+
+        @Parameter(description = "Maximum number of raw points, downsampled with Largest-Triangle-Three-Buckets. Either bucket or maxPoints is required.")
+        @RequestParam(required = false) Integer maxPoints
     ) {
-        return ResponseEntity.ok().body(sensorService.getChartFilters(userId, field, min, max, granularity, year, month, day, hour, minute));
+        return ResponseEntity.ok().body(sensorService.getChartRange(userId, field, from, to, bucket, maxPoints));
+    }
+
+    private static CacheControl cacheControl(ChartCache.Entry chart) {
+        return CacheControl.maxAge(chart.getMaxAge()).cachePrivate().mustRevalidate();
     }
-}
\ No newline at end of file
+}
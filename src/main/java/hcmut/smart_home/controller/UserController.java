@@ -99,8 +99,10 @@ public class UserController {
             @ApiResponse(responseCode = "500", description = "Internal server error",
                     content = @Content())
     })
-    public ResponseEntity<AuthResponse> loginWithFaceId(@RequestParam("image") MultipartFile image) {
-        return ResponseEntity.status(HttpStatus.OK).body(userService.loginWithFaceId(image));
+    public ResponseEntity<AuthResponse> loginWithFaceId(@RequestParam("image") MultipartFile image,
+                                                        @Parameter(description = "Email or ID of the user to verify the face against. If omitted, the face is matched against all enrolled users.")
+                                                        @RequestParam(value = "identifier", required = false) String identifier) {
+        return ResponseEntity.status(HttpStatus.OK).body(userService.loginWithFaceId(image, identifier));
     }
 
     @PublicEndpoint
@@ -209,7 +211,7 @@ public class UserController {
     @GetMapping("/me/notifications")
     @Operation(
         summary = "Get user notifications",
-        description = "Retrieve a paginated list of notifications for the authenticated user.",
+        description = "Retrieve a paginated list of notifications for the authenticated user. Pass the returned nextCursor to fetch the following page.",
         tags = "User Management"
     )
     @ApiResponses(value = {
@@ -231,9 +233,12 @@ public class UserController {
         @RequestParam(required = false) Integer page,
 
         @Parameter(description = "Limit number for pagination")
-        @RequestParam(required = false) Integer limit
+        @RequestParam(required = false) Integer limit,
+
+        @Parameter(description = "Cursor returned as nextCursor by the previous page. Takes precedence over page.")
+        @RequestParam(required = false) String cursor
     ) {
-        return ResponseEntity.status(HttpStatus.OK).body(userService.getUserNotifications(userId, page, limit));
+        return ResponseEntity.status(HttpStatus.OK).body(userService.getUserNotifications(userId, page, limit, cursor));
     }
 
     @PostMapping("/me/mode-configs")
@@ -10,6 +10,7 @@ public class PaginationResponse<T> {
     private long total;
     private boolean hasNextPage;
     private boolean hasPrevPage;
+    private String nextCursor;
 
     public PaginationResponse(T[] data, int page, int limit, long total, boolean hasNextPage, boolean hasPrevPage) {
         this.data = data;
@@ -20,6 +21,11 @@ public class PaginationResponse<T> {
         this.hasPrevPage = hasPrevPage;
     }
 
+    public PaginationResponse(T[] data, int page, int limit, long total, boolean hasNextPage, boolean hasPrevPage, String nextCursor) {
+        this(data, page, limit, total, hasNextPage, hasPrevPage);
+        this.nextCursor = nextCursor;
+    }
+
     public int getPage() {
         return page;
     }
@@ -60,6 +66,14 @@ public class PaginationResponse<T> {
         this.hasPrevPage = hasPrevPage;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public T[] getData() {
         return data;
     }
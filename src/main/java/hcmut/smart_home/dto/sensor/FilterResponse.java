@@ -6,12 +6,35 @@ import io.swagger.v3.oas.annotations.media.Schema;
 public class FilterResponse {
     private String label;
     private double data;
+    private double min;
+    private double max;
+    private long count;
+    @Schema(description = "Population standard deviation of the bucket, null if it is unknown", nullable = true)
+    private Double stddev;
 
     public FilterResponse(String label, double data) {
         this.label = label;
         this.data = data;
     }
 
+    public FilterResponse(String label, double data, double min, double max, long count, double stddev) {
+        this.label = label;
+        this.data = data;
+        this.min = min;
+        this.max = max;
+        this.count = count;
+        this.stddev = Double.isNaN(stddev) ? null : stddev;
+    }
+
+    public FilterResponse(FilterResponse other) {
+        this.label = other.label;
+        this.data = other.data;
+        this.min = other.min;
+        this.max = other.max;
+        this.count = other.count;
+        this.stddev = other.stddev;
+    }
+
     public String getLabel() {
         return label;
     }
@@ -27,5 +50,37 @@ public class FilterResponse {
     public void setData(double data) {
         this.data = data;
     }
-    
+
+    public double getMin() {
+        return min;
+    }
+
+    public void setMin(double min) {
+        this.min = min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void setMax(double max) {
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public Double getStddev() {
+        return stddev;
+    }
+
+    public void setStddev(Double stddev) {
+        this.stddev = stddev;
+    }
+
 }
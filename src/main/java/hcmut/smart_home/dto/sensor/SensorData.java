@@ -1,7 +1,6 @@
 package hcmut.smart_home.dto.sensor;
 
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class SensorData {
     private long ledMode;
@@ -23,40 +22,33 @@ public class SensorData {
         this.timestamp = System.currentTimeMillis();
     }
 
+    /**
+     * Updates the fields present in a raw Realtime Database value in a single pass over its entries.
+     * Numeric values are coerced whatever their boxed type; missing or non-numeric values keep the previous value.
+     *
+     * @param data the value of a {@code data/{sensorId}} snapshot
+     */
     public void updateData(Object data) {
-        if (!(data instanceof Map<?, ?>)) {
+        if (!(data instanceof Map<?, ?> dataMap)) {
             return;
         }
 
-        Map<?, ?> rawMap = (Map<?, ?>) data;
-        Map<String, Object> dataMap = rawMap.entrySet().stream()
-            .filter(entry -> entry.getKey() instanceof String)
-            .collect(Collectors.toMap(
-                entry -> (String) entry.getKey(),
-                Map.Entry::getValue
-            ));
-
-        this.humidity       = dataMap.get("humidity") != null 
-                                ? ((Number) dataMap.get("humidity")).doubleValue()
-                                : humidity;
-        this.lightIntensity = dataMap.get("light_intensity") != null 
-                                ? ((Number) dataMap.get("light_intensity")).doubleValue() 
-                                : lightIntensity;
-        this.temperature    = dataMap.get("temperature") != null 
-                                ? ((Number) dataMap.get("temperature")).doubleValue()
-                                : temperature;
-        this.timestamp      = dataMap.get("timestamp") != null 
-                                ? (long) dataMap.get("timestamp")      
-                                : timestamp;
-        this.ledMode        = dataMap.get("button_for_led") != null 
-                                ? (long) dataMap.get("button_for_led")  
-                                : ledMode;
-        this.fanMode        = dataMap.get("button_for_fan") != null 
-                                ? (long) dataMap.get("button_for_fan")  
-                                : fanMode;
-        this.brightness     = dataMap.get("candel_power_for_led") != null
-                                ? (long) dataMap.get("candel_power_for_led")
-                                : brightness;
+        for (Map.Entry<?, ?> entry : dataMap.entrySet()) {
+            if (!(entry.getKey() instanceof String key) || !(entry.getValue() instanceof Number value)) {
+                continue;
+            }
+
+            switch (key) {
+                case "humidity" -> this.humidity = value.doubleValue();
+                case "light_intensity" -> this.lightIntensity = value.doubleValue();
+                case "temperature" -> this.temperature = value.doubleValue();
+                case "timestamp" -> this.timestamp = value.longValue();
+                case "button_for_led" -> this.ledMode = value.longValue();
+                case "button_for_fan" -> this.fanMode = value.longValue();
+                case "candel_power_for_led" -> this.brightness = value.longValue();
+                default -> {}
+            }
+        }
     }
 
     public long getLedMode() {
@@ -0,0 +1,12 @@
+package hcmut.smart_home.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class ServiceUnavailableException extends ResponseStatusException {
+
+	public ServiceUnavailableException(final String reason) {
+		super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+	}
+
+}
@@ -2,6 +2,7 @@ package hcmut.smart_home.handler;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
@@ -18,18 +19,24 @@ import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 
 import hcmut.smart_home.util.Jwt;
+import hcmut.smart_home.util.Pair;
 
 @Component
 public class WebSocketNotificationHandler extends TextWebSocketHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketNotificationHandler.class);
-    private final ConcurrentHashMap<WebSocketSession, String> sessionSensorMap = new ConcurrentHashMap<>();
+    // Session -> (userId, sensorId), resolved once at handshake time
+    private final ConcurrentHashMap<WebSocketSession, Pair<String, String>> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<WebSocketSession>> sensorSessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<WebSocketSession>> userSessions = new ConcurrentHashMap<>();
     private final Jwt jwt;
     private final Firestore firestore;
+    private final WebSocketOutbox webSocketOutbox;
 
-    public WebSocketNotificationHandler(Jwt jwt, Firestore firestore) {
+    public WebSocketNotificationHandler(Jwt jwt, Firestore firestore, WebSocketOutbox webSocketOutbox) {
         this.jwt = jwt;
         this.firestore = firestore;
+        this.webSocketOutbox = webSocketOutbox;
     }
 
     @Override
@@ -60,7 +67,7 @@ public class WebSocketNotificationHandler extends TextWebSocketHandler {
                 return;
             }
 
-            sessionSensorMap.put(session, sensorId);
+            registerSession(session, userId, sensorId);
             logger.info("New WebSocket connection for sensorId: {} , session: {}", sensorId, session.getId());
 
         } catch (Exception e) {
@@ -71,44 +78,68 @@ public class WebSocketNotificationHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        sessionSensorMap.remove(session);
+        unregisterSession(session);
         logger.info("WebSocket connection closed: {} with status: {}", session.getId(), status);
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) {
         logger.error("WebSocket error for session {}: ", session.getId(), exception);
-        sessionSensorMap.remove(session);
+        unregisterSession(session);
     }
 
     public void sendNotification(String sensorId, String message) {
-        for (WebSocketSession session : sessionSensorMap.keySet()) {
-            String assignedSensorId = sessionSensorMap.get(session);
-            if (session.isOpen() && sensorId.equals(assignedSensorId)) {
-                try {
-                    session.sendMessage(new TextMessage(message));
-                    logger.info("Sent notification to session {} for sensorId {}: {}", session.getId(), sensorId, message);
-                } catch (IOException e) {
-                    logger.error("Error sending message to session {}: ", session.getId(), e);
-                }
+        for (WebSocketSession session : sensorSessions.getOrDefault(sensorId, Set.of())) {
+            if (webSocketOutbox.send(session, message)) {
+                logger.info("Queued notification for session {} for sensorId {}: {}", session.getId(), sensorId, message);
             }
         }
     }
 
     public void sendNotificationToUser(String userId, String message) {
-        for (WebSocketSession session : sessionSensorMap.keySet()) {
-            String assignedUserId = jwt.extractId(extractTokenFromUri(session.getUri()));
-            if (session.isOpen() && userId.equals(assignedUserId)) {
-                try {
-                    session.sendMessage(new TextMessage(message));
-                    logger.info("Sent notification to user {}: {}", userId, message);
-                } catch (IOException e) {
-                    logger.error("Error sending message to user {}: ", userId, e);
-                }
+        for (WebSocketSession session : userSessions.getOrDefault(userId, Set.of())) {
+            if (webSocketOutbox.send(session, message)) {
+                logger.info("Queued notification for user {}: {}", userId, message);
             }
         }
     }
 
+    private void registerSession(WebSocketSession session, String userId, String sensorId) {
+        sessions.put(session, new Pair<>(userId, sensorId));
+        webSocketOutbox.register(session);
+        addToIndex(sensorSessions, sensorId, session);
+        addToIndex(userSessions, userId, session);
+
+        // The session may have closed before it was indexed
+        if (!session.isOpen()) {
+            unregisterSession(session);
+        }
+    }
+
+    private void unregisterSession(WebSocketSession session) {
+        webSocketOutbox.unregister(session);
+        Pair<String, String> sessionData = sessions.remove(session);
+        if (sessionData != null) {
+            removeFromIndex(userSessions, sessionData.getFirst(), session);
+            removeFromIndex(sensorSessions, sessionData.getSecond(), session);
+        }
+    }
+
+    private void addToIndex(ConcurrentHashMap<String, Set<WebSocketSession>> index, String key, WebSocketSession session) {
+        index.compute(key, (_, indexed) -> {
+            Set<WebSocketSession> sessionsForKey = indexed != null ? indexed : ConcurrentHashMap.newKeySet();
+            sessionsForKey.add(session);
+            return sessionsForKey;
+        });
+    }
+
+    private void removeFromIndex(ConcurrentHashMap<String, Set<WebSocketSession>> index, String key, WebSocketSession session) {
+        index.computeIfPresent(key, (_, indexed) -> {
+            indexed.remove(session);
+            return indexed.isEmpty() ? null : indexed;
+        });
+    }
+
     private String extractTokenFromUri(URI uri) {
         if (uri == null || uri.getQuery() == null || !uri.getQuery().startsWith("token=")) {
             return null;
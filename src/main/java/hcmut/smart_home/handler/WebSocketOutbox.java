@@ -0,0 +1,186 @@
+package hcmut.smart_home.handler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Non-blocking send path for WebSocket pushes.
+ *
+ * <p>Every registered session gets a bounded outbound buffer drained by its own virtual thread, so callers
+ * (typically Firebase callback threads) only enqueue and never wait on a slow client. When a buffer is full
+ * the configured overflow policy either drops the oldest pending message or disconnects the session.</p>
+ */
+@Component
+public class WebSocketOutbox {
+
+    public enum OverflowPolicy { DROP_OLDEST, DISCONNECT }
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketOutbox.class);
+    private final ConcurrentHashMap<WebSocketSession, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final DistributionSummary queueDepth;
+    private final Counter evicted;
+    private final Counter disconnected;
+
+    public WebSocketOutbox(@Value("${websocket.outbound.capacity:64}") int capacity,
+                           @Value("${websocket.outbound.overflow-policy:drop-oldest}") String overflowPolicy,
+                           MeterRegistry meterRegistry) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("websocket.outbound.capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+
+        Gauge.builder("websocket.outbound.queued", queued, AtomicInteger::get)
+            .description("Messages waiting in WebSocket outbound buffers")
+            .register(meterRegistry);
+        this.queueDepth = DistributionSummary.builder("websocket.outbound.queue.depth")
+            .description("Depth of a session's outbound buffer after enqueueing a message")
+            .register(meterRegistry);
+        this.evicted = Counter.builder("websocket.outbound.evicted")
+            .description("Messages dropped because a session's outbound buffer was full")
+            .register(meterRegistry);
+        this.disconnected = Counter.builder("websocket.outbound.disconnected")
+            .description("Sessions closed because their outbound buffer was full")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Creates the outbound buffer of a session. Messages for unregistered sessions are discarded.
+     */
+    public void register(WebSocketSession session) {
+        outboxes.putIfAbsent(session, new Outbox(session));
+    }
+
+    /**
+     * Discards the outbound buffer of a session, including any message still pending.
+     */
+    public void unregister(WebSocketSession session) {
+        Outbox outbox = outboxes.remove(session);
+        if (outbox != null) {
+            synchronized (outbox) {
+                queued.addAndGet(-outbox.queue.size());
+                outbox.queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Enqueues a message for a session without blocking.
+     *
+     * @param session the target session
+     * @param message the text payload
+     * @return {@code true} if the message was accepted, {@code false} if the session is not registered
+     *         or was disconnected by the overflow policy
+     */
+    public boolean send(WebSocketSession session, String message) {
+        Outbox outbox = outboxes.get(session);
+        if (outbox == null || !session.isOpen()) {
+            return false;
+        }
+
+        boolean startDrain = false;
+        synchronized (outbox) {
+            if (outbox.queue.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    disconnect(outbox);
+                    return false;
+                }
+                outbox.queue.pollFirst();
+                queued.decrementAndGet();
+                evicted.increment();
+            }
+
+            outbox.queue.addLast(new TextMessage(message));
+            queued.incrementAndGet();
+            queueDepth.record(outbox.queue.size());
+
+            if (!outbox.draining) {
+                outbox.draining = true;
+                startDrain = true;
+            }
+        }
+
+        if (startDrain) {
+            senders.execute(() -> drain(outbox));
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private void drain(Outbox outbox) {
+        WebSocketSession session = outbox.session;
+        while (true) {
+            TextMessage message;
+            synchronized (outbox) {
+                message = outbox.queue.pollFirst();
+                if (message == null) {
+                    outbox.draining = false;
+                    return;
+                }
+            }
+            queued.decrementAndGet();
+
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(message);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error sending message to session {}: ", session.getId(), e);
+            }
+        }
+    }
+
+    private void disconnect(Outbox outbox) {
+        WebSocketSession session = outbox.session;
+        unregister(session);
+        disconnected.increment();
+        logger.warn("Outbound buffer of session {} is full, disconnecting", session.getId());
+
+        senders.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                logger.error("Error closing session {}: ", session.getId(), e);
+            }
+        });
+    }
+
+    private static final class Outbox {
+        private final WebSocketSession session;
+        private final ArrayDeque<TextMessage> queue = new ArrayDeque<>();
+        private boolean draining;
+
+        private Outbox(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package hcmut.smart_home.handler;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
@@ -18,32 +19,42 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
-import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import hcmut.smart_home.dto.sensor.SensorData;
+import hcmut.smart_home.service.SensorStreamHub;
 import hcmut.smart_home.util.Jwt;
 import hcmut.smart_home.util.Pair;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Component
 public class WebSocketRealtimeHandler extends TextWebSocketHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketRealtimeHandler.class);
     private final ConcurrentHashMap<WebSocketSession, Pair<String, String>> sessions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<WebSocketSession, ValueEventListener> sensorListeners = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<WebSocketSession, ValueEventListener> controlListeners = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<WebSocketSession, List<SensorStreamHub.Subscription>> subscriptions = new ConcurrentHashMap<>();
 
     private final Jwt jwt;
     private final Firestore firestore;
     private final FirebaseDatabase firebaseDatabase;
+    private final SensorStreamHub sensorStreamHub;
+    private final WebSocketOutbox webSocketOutbox;
 
-    public WebSocketRealtimeHandler(Jwt jwt, Firestore firestore, FirebaseDatabase firebaseDatabase) {
+    public WebSocketRealtimeHandler(Jwt jwt, Firestore firestore, FirebaseDatabase firebaseDatabase,
+                                    SensorStreamHub sensorStreamHub, WebSocketOutbox webSocketOutbox,
+                                    MeterRegistry meterRegistry) {
         this.jwt = jwt;
         this.firestore = firestore;
         this.firebaseDatabase = firebaseDatabase;
+        this.sensorStreamHub = sensorStreamHub;
+        this.webSocketOutbox = webSocketOutbox;
+
+        Gauge.builder("websocket.realtime.sessions", sessions, ConcurrentHashMap::size)
+            .description("Open realtime WebSocket sessions")
+            .register(meterRegistry);
     }
 
     @Override
@@ -69,6 +80,7 @@ public class WebSocketRealtimeHandler extends TextWebSocketHandler {
             }
 
             sessions.put(session, new Pair<>(userId, sensorId));
+            webSocketOutbox.register(session);
             setupRealtimeListeners(session, sensorId);
             logger.info("New WebSocket connection for userId: {}, sensorId: {}, session: {}", userId, sensorId, session.getId());
 
@@ -127,14 +139,13 @@ public class WebSocketRealtimeHandler extends TextWebSocketHandler {
 
     private void setupRealtimeListeners(WebSocketSession session, String sensorId) {
         SensorData data = new SensorData();
-        DatabaseReference sensorRef = firebaseDatabase.getReference("data/" + sensorId);
-        DatabaseReference controlRef = firebaseDatabase.getReference("control/" + sensorId);
 
-        ValueEventListener sensorListener = new ValueEventListener() {
+        // Sensor readings and control state are merged into one view per session
+        SensorStreamHub.StreamListener listener = new SensorStreamHub.StreamListener() {
             @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    data.updateData(snapshot.getValue());
+            public void onValue(Object value) {
+                synchronized (data) {
+                    data.updateData(value);
                     if (data.isSendable()) {
                         sendDataToClient(session, data);
                     } else {
@@ -144,43 +155,25 @@ public class WebSocketRealtimeHandler extends TextWebSocketHandler {
             }
 
             @Override
-            public void onCancelled(DatabaseError error) {
+            public void onError(DatabaseError error) {
                 handleDatabaseError(session, error);
             }
         };
-        sensorRef.addValueEventListener(sensorListener);
-        sensorListeners.put(session, sensorListener);
 
-        ValueEventListener controlListener = new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    data.updateData(snapshot.getValue());
-                    if (data.isSendable()) {
-                        sendDataToClient(session, data);
-                    } else {
-                        data.setSendable();
-                    }
-                }
-            }
+        subscriptions.put(session, List.of(
+            sensorStreamHub.subscribe("data/" + sensorId, listener, session::isOpen),
+            sensorStreamHub.subscribe("control/" + sensorId, listener, session::isOpen)
+        ));
 
-            @Override
-            public void onCancelled(DatabaseError error) {
-                handleDatabaseError(session, error);
-            }
-        };
-        controlRef.addValueEventListener(controlListener);
-        controlListeners.put(session, controlListener);
+        // The session may have closed while subscribing, after its cleanup already ran
+        if (!session.isOpen()) {
+            cleanupSession(session);
+        }
     }
 
     private void sendDataToClient(WebSocketSession session, SensorData data) {
-        try {
-            if (session.isOpen()) {
-                session.sendMessage(new TextMessage(data.toString()));
-                logger.debug("Sent data to session {}: {}", session.getId(), data);
-            }
-        } catch (IOException e) {
-            logger.error("Error sending data to session {}: ", session.getId(), e);
+        if (webSocketOutbox.send(session, data.toString())) {
+            logger.debug("Queued data for session {}: {}", session.getId(), data);
         }
     }
 
@@ -190,17 +183,11 @@ public class WebSocketRealtimeHandler extends TextWebSocketHandler {
     }
 
     private void cleanupSession(WebSocketSession session) {
-        Pair<String, String> sessionData = sessions.remove(session);
-        if (sessionData != null) {
-            String sensorId = sessionData.getSecond();
-            ValueEventListener sensorListener = sensorListeners.remove(session);
-            if (sensorListener != null) {
-                firebaseDatabase.getReference(sensorId).removeEventListener(sensorListener);
-            }
-            ValueEventListener controlListener = controlListeners.remove(session);
-            if (controlListener != null) {
-                firebaseDatabase.getReference(sensorId + "_control").removeEventListener(controlListener);
-            }
+        sessions.remove(session);
+        webSocketOutbox.unregister(session);
+        List<SensorStreamHub.Subscription> sessionSubscriptions = subscriptions.remove(session);
+        if (sessionSubscriptions != null) {
+            sessionSubscriptions.forEach(SensorStreamHub.Subscription::unsubscribe);
         }
     }
 
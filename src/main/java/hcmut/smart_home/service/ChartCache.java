@@ -0,0 +1,164 @@
+package hcmut.smart_home.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import hcmut.smart_home.dto.sensor.FilterResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded cache of chart results.
+ *
+ * <p>Results of the period still in progress expire after a short TTL. Results of completed periods expire after a
+ * longer one: they can still change when late readings land or rollups are recomputed, so they are never treated as
+ * immutable. The least recently used entry is evicted when the cache is full. Every entry carries an ETag computed
+ * from its content, so clients revalidate instead of refetching once their copy is stale.</p>
+ */
+@Service
+public class ChartCache {
+
+    /**
+     * Identifies a chart result. Charts are shared by all users of a sensor.
+     */
+    public record Key(String sensorId, List<String> fields, String granularity, long periodStart,
+                      Double min, Double max) {}
+
+    /**
+     * A cached chart result and its HTTP cache validators.
+     */
+    public static final class Entry {
+        private final Map<String, List<FilterResponse>> series;
+        private final String etag;
+        private final long expiresAt;
+
+        private Entry(Map<String, List<FilterResponse>> series, String etag, long expiresAt) {
+            this.series = series;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Returns a copy of the series, so callers cannot alter the cached result.
+         */
+        public Map<String, List<FilterResponse>> getSeries() {
+            Map<String, List<FilterResponse>> copy = new LinkedHashMap<>();
+            series.forEach((field, points) -> {
+                List<FilterResponse> pointsCopy = new ArrayList<>(points.size());
+                points.forEach(point -> pointsCopy.add(new FilterResponse(point)));
+                copy.put(field, pointsCopy);
+            });
+            return copy;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * How long clients may reuse the result without revalidating: as long as it stays cached here.
+         */
+        public Duration getMaxAge() {
+            return Duration.ofMillis(Math.max(0, expiresAt - System.currentTimeMillis()));
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ChartCache.class);
+    private final Map<Key, Entry> entries;
+
+    private final ObjectMapper objectMapper;
+    private final long currentPeriodTtlMs;
+    private final long completePeriodTtlMs;
+    private final Counter hits;
+    private final Counter misses;
+
+    public ChartCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                      @Value("${chart.cache.max-entries:1000}") int maxEntries,
+                      @Value("${chart.cache.current-period-ttl-ms:60000}") long currentPeriodTtlMs,
+                      @Value("${chart.cache.complete-period-ttl-ms:3600000}") long completePeriodTtlMs) {
+        this.objectMapper = objectMapper;
+        this.currentPeriodTtlMs = currentPeriodTtlMs;
+        this.completePeriodTtlMs = completePeriodTtlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("chart.cache.requests")
+            .description("Chart requests served by the chart cache")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("chart.cache.requests")
+            .description("Chart requests served by the chart cache")
+            .tag("result", "miss")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached chart for a key, or {@code null} if it is absent or expired.
+     */
+    public Entry get(Key key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                entries.remove(key);
+                entry = null;
+            }
+            (entry == null ? misses : hits).increment();
+            return entry;
+        }
+    }
+
+    /**
+     * Caches a chart result.
+     *
+     * @param key the chart key
+     * @param series the series of each field
+     * @param periodEnd the exclusive end of the charted period, in epoch seconds; the period is considered
+     *                  complete once it ended more than one current-period TTL ago, leaving time for late
+     *                  readings to land
+     * @return the cached entry
+     */
+    public Entry put(Key key, Map<String, List<FilterResponse>> series, long periodEnd) {
+        long now = System.currentTimeMillis();
+        boolean complete = periodEnd * 1000 + currentPeriodTtlMs <= now;
+        Map<String, List<FilterResponse>> copy = new LinkedHashMap<>();
+        series.forEach((field, points) -> copy.put(field, Collections.unmodifiableList(new ArrayList<>(points))));
+        Entry entry = new Entry(copy, etag(copy), now + (complete ? completePeriodTtlMs : currentPeriodTtlMs));
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private String etag(Map<String, List<FilterResponse>> series) {
+        try {
+            byte[] content = objectMapper.writeValueAsString(series).getBytes(StandardCharsets.UTF_8);
+            return "\"" + DigestUtils.md5DigestAsHex(content) + "\"";
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to compute chart ETag: {}", e.getMessage());
+            return "\"" + Integer.toHexString(System.identityHashCode(series)) + "\"";
+        }
+    }
+}
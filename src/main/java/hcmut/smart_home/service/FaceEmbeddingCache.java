@@ -0,0 +1,115 @@
+package hcmut.smart_home.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import hcmut.smart_home.dto.FaceEmbedding.FaceEmbedding;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded cache of extracted face embeddings, keyed by the SHA-256 of the image bytes.
+ *
+ * <p>Clients retrying a face login with the same image get the embedding back without a new extraction.
+ * Entries expire after a TTL and the least recently used entry is evicted when the cache is full. A cryptographic
+ * hash is used on purpose: a cheaper hash would let a crafted image collide with another user's image and reuse
+ * its embedding.</p>
+ */
+@Service
+public class FaceEmbeddingCache {
+
+    private record Entry(List<Double> embedding, int dimensions, long expiresAt) {}
+
+    private final Map<String, Entry> entries;
+    private final long ttlMs;
+    private final Counter hits;
+    private final Counter misses;
+
+    public FaceEmbeddingCache(MeterRegistry meterRegistry,
+                              @Value("${face.embedding.cache.max-entries:256}") int maxEntries,
+                              @Value("${face.embedding.cache.ttl-ms:120000}") long ttlMs) {
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("face.embedding.cache.requests")
+            .description("Face embedding extractions served by the embedding cache")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("face.embedding.cache.requests")
+            .description("Face embedding extractions served by the embedding cache")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        Gauge.builder("face.embedding.cache.size", this, FaceEmbeddingCache::size)
+            .description("Number of face embeddings in the embedding cache")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Computes the cache key of an image.
+     */
+    public String key(byte[] image) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(image));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached embedding of an image, or {@code null} if it is absent or expired.
+     *
+     * @param key the cache key of the image, from {@link #key(byte[])}
+     */
+    public FaceEmbedding get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now >= entry.expiresAt()) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return new FaceEmbedding(entry.embedding(), entry.dimensions());
+        }
+    }
+
+    /**
+     * Caches the embedding extracted from an image.
+     *
+     * @param key the cache key of the image, from {@link #key(byte[])}
+     * @param embedding the extracted embedding
+     */
+    public void put(String key, FaceEmbedding embedding) {
+        if (embedding == null || embedding.getEmbedding() == null) {
+            return;
+        }
+        Entry entry = new Entry(List.copyOf(embedding.getEmbedding()), embedding.getDimensions(),
+            System.currentTimeMillis() + ttlMs);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package hcmut.smart_home.service;
+
+import hcmut.smart_home.dto.FaceEmbedding.FaceEmbedding;
+
+/**
+ * Extracts a face embedding from an image.
+ *
+ * <p>The implementation is selected with {@code face.embedding.backend}: {@code remote} (the default) calls the
+ * face embedding server, {@code onnx} runs a local model in process.</p>
+ */
+public interface FaceEmbeddingExtractor {
+
+    /**
+     * Extracts the embedding of the face in an image.
+     *
+     * @param image the encoded image
+     * @param filename the original file name of the image, may be {@code null}
+     * @return the face embedding
+     */
+    FaceEmbedding extract(byte[] image, String filename);
+}
@@ -0,0 +1,305 @@
+package hcmut.smart_home.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+
+import hcmut.smart_home.util.EmbeddingCodec;
+import hcmut.smart_home.util.HnswIndex;
+import hcmut.smart_home.util.SimilarityKernel;
+
+/**
+ * Resident index of the enrolled face embeddings of the "face-ids" collection.
+ *
+ * <p>Embeddings are L2-normalised once and stored back to back in a single {@code float[]}, so matching a probe
+ * is a dot-product scan over contiguous memory. The index is kept current by a Firestore snapshot listener, and
+ * writers on this server ({@link UserService}) push their changes directly so a new enrollment is usable at once.</p>
+ *
+ * <p>For large galleries an {@link HnswIndex} can be enabled with {@code face.index.hnsw.enabled}. Its approximate
+ * top candidates are then re-ranked exactly against the stored embeddings instead of scanning all of them.</p>
+ */
+@Service
+public class FaceEmbeddingIndex {
+
+    /**
+     * The enrolled face most similar to a probe.
+     */
+    public record Match(String userId, double similarity) {}
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceEmbeddingIndex.class);
+    private static final long READY_TIMEOUT_SECONDS = 10;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] ids = new String[16];
+    private float[] vectors = new float[0];
+    private int dimensions;
+    private int size;
+
+    private final Firestore firestore;
+    private final HnswIndex graph;
+    private final int efSearch;
+    private final int rerankCandidates;
+    private ListenerRegistration registration;
+
+    public FaceEmbeddingIndex(Firestore firestore,
+                              @Value("${face.index.hnsw.enabled:false}") boolean hnswEnabled,
+                              @Value("${face.index.hnsw.m:16}") int m,
+                              @Value("${face.index.hnsw.ef-construction:200}") int efConstruction,
+                              @Value("${face.index.hnsw.ef-search:64}") int efSearch,
+                              @Value("${face.index.hnsw.rerank-candidates:10}") int rerankCandidates) {
+        this.firestore = firestore;
+        this.graph = hnswEnabled ? new HnswIndex(m, efConstruction) : null;
+        this.efSearch = efSearch;
+        this.rerankCandidates = Math.max(1, rerankCandidates);
+    }
+
+    @PostConstruct
+    public void startListening() {
+        registration = firestore.collection("face-ids").addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                logger.error("Error while listening to face IDs: {}", error.getMessage());
+                return;
+            }
+            if (snapshot == null) {
+                return;
+            }
+
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                QueryDocumentSnapshot doc = change.getDocument();
+                switch (change.getType()) {
+                    case ADDED, MODIFIED -> put(doc.getId(), doc.get("embedding"));
+                    case REMOVED -> remove(doc.getId());
+                }
+            }
+            ready.countDown();
+        });
+    }
+
+    @PreDestroy
+    public void stopListening() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    /**
+     * Adds or replaces the embedding of a user. Embeddings that cannot be decoded, are all zeros,
+     * or do not have the dimensions of the index are ignored, and the previous embedding of the user is removed so
+     * it stops matching. The index takes the dimensions of the new embedding if it was the only one.
+     *
+     * @param userId the ID of the user
+     * @param embedding the stored embedding, packed by {@link EmbeddingCodec} or a legacy list of numbers
+     */
+    public void put(String userId, Object embedding) {
+        float[] vector = normalize(embedding);
+        if (vector == null) {
+            logger.warn("Ignoring invalid face embedding of user {}", userId);
+            remove(userId);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (size == 0) {
+                dimensions = vector.length;
+            } else if (vector.length != dimensions) {
+                // The write lock is reentrant
+                remove(userId);
+                if (size > 0) {
+                    logger.warn("Ignoring face embedding of user {} with {} dimensions instead of {}", userId, vector.length, dimensions);
+                    return;
+                }
+                dimensions = vector.length;
+            }
+
+            Integer slot = slots.get(userId);
+            if (slot == null) {
+                slot = size++;
+                ensureCapacity(size);
+                slots.put(userId, slot);
+                ids[slot] = userId;
+            } else if (Arrays.equals(vectors, slot * dimensions, (slot + 1) * dimensions, vector, 0, dimensions)) {
+                // Unchanged, e.g. the listener echoing a write pushed by this server: keep the graph as it is
+                return;
+            }
+            System.arraycopy(vector, 0, vectors, slot * dimensions, dimensions);
+            if (graph != null) {
+                graph.insert(userId, vector);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the embedding of a user, moving the last embedding into its slot.
+     */
+    public void remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(userId);
+            if (slot == null) {
+                return;
+            }
+            if (graph != null) {
+                graph.remove(userId);
+            }
+
+            int last = --size;
+            if (slot != last) {
+                System.arraycopy(vectors, last * dimensions, vectors, slot * dimensions, dimensions);
+                ids[slot] = ids[last];
+                slots.put(ids[slot], slot);
+            }
+            ids[last] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the enrolled face most similar to a probe embedding.
+     *
+     * @param embedding the probe embedding
+     * @return the best match, or {@code null} if the index is empty or the probe has other dimensions
+     * @throws InterruptedException if interrupted while waiting for the index to be loaded
+     */
+    public Match findBestMatch(List<Double> embedding) throws InterruptedException {
+        float[] probe = normalize(embedding);
+        if (probe == null) {
+            return null;
+        }
+        if (!ready.await(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Face embedding index is not loaded yet, matching against a partial index");
+        }
+
+        lock.readLock().lock();
+        try {
+            if (size == 0 || probe.length != dimensions) {
+                return null;
+            }
+
+            if (graph != null && size > rerankCandidates) {
+                return rerank(probe, graph.search(probe, rerankCandidates, efSearch));
+            }
+
+            int best = SimilarityKernel.argMaxDot(probe, vectors, size);
+            return new Match(ids[best], SimilarityKernel.dot(probe, vectors, best * dimensions, dimensions));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compares a probe embedding with the enrolled face of a single user.
+     *
+     * @param userId the ID of the user
+     * @param embedding the probe embedding
+     * @return the similarity with the user's face, or {@code null} if the user has no face enrolled or the probe
+     *         has other dimensions
+     * @throws InterruptedException if interrupted while waiting for the index to be loaded
+     */
+    public Match verify(String userId, List<Double> embedding) throws InterruptedException {
+        float[] probe = normalize(embedding);
+        if (probe == null) {
+            return null;
+        }
+        if (!ready.await(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Face embedding index is not loaded yet, verifying against a partial index");
+        }
+
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(userId);
+            if (slot == null || probe.length != dimensions) {
+                return null;
+            }
+            return new Match(userId, SimilarityKernel.dot(probe, vectors, slot * dimensions, dimensions));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Picks the candidate with the highest exact similarity. Must be called with the read lock held.
+     */
+    private Match rerank(float[] probe, List<String> candidates) {
+        Match best = null;
+        for (String userId : candidates) {
+            Integer slot = slots.get(userId);
+            if (slot == null) {
+                continue;
+            }
+            double similarity = SimilarityKernel.dot(probe, vectors, slot * dimensions, dimensions);
+            if (best == null || similarity > best.similarity()) {
+                best = new Match(userId, similarity);
+            }
+        }
+        return best;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(count, ids.length * 2));
+        }
+        if (count * dimensions > vectors.length) {
+            vectors = Arrays.copyOf(vectors, Math.max(count, ids.length) * dimensions);
+        }
+    }
+
+    /**
+     * Decodes a stored embedding into an L2-normalised {@code float[]}.
+     *
+     * @return the normalised vector, or {@code null} if the embedding cannot be decoded or is empty or all zeros
+     */
+    static float[] normalize(Object embedding) {
+        float[] vector = EmbeddingCodec.decode(embedding);
+        if (vector == null || vector.length == 0) {
+            return null;
+        }
+
+        double norm = 0.0;
+        for (float value : vector) {
+            norm += (double) value * value;
+        }
+        if (norm == 0.0) {
+            return null;
+        }
+
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
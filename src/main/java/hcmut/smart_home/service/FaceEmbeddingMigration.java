@@ -0,0 +1,118 @@
+package hcmut.smart_home.service;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+
+import hcmut.smart_home.util.EmbeddingCodec;
+
+/**
+ * Rewrites legacy "face-ids" documents, whose embedding is an array of doubles, in the packed
+ * {@link EmbeddingCodec} format.
+ *
+ * <p>The migration runs once per start on a background thread and pages through the collection. Each document is
+ * only updated if it did not change since it was read, so a concurrent enrollment is never overwritten; a page
+ * that loses such a race is left for the next start. Legacy documents stay readable in the meantime.</p>
+ *
+ * <p>It only runs when {@code face.embedding.storage-format} is a packed format, which must not be configured
+ * before every instance runs a version that reads packed embeddings.</p>
+ */
+@Service
+public class FaceEmbeddingMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceEmbeddingMigration.class);
+
+    private final Firestore firestore;
+    private final FaceEmbeddingService faceEmbeddingService;
+    private final boolean enabled;
+    private final int pageSize;
+    private Thread worker;
+
+    public FaceEmbeddingMigration(Firestore firestore, FaceEmbeddingService faceEmbeddingService,
+                                  @Value("${face.embedding.migration.enabled:true}") boolean enabled,
+                                  @Value("${face.embedding.migration.page-size:100}") int pageSize) {
+        this.firestore = firestore;
+        this.faceEmbeddingService = faceEmbeddingService;
+        this.enabled = enabled;
+        this.pageSize = Math.min(Math.max(1, pageSize), 500); // Firestore limit of writes per batch
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || faceEmbeddingService.getStorageFormat() == null) {
+            return;
+        }
+        worker = new Thread(this::migrate, "face-embedding-migration");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void migrate() {
+        int migrated = 0;
+        QueryDocumentSnapshot last = null;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Query query = firestore.collection("face-ids").orderBy(FieldPath.documentId()).limit(pageSize);
+                if (last != null) {
+                    query = query.startAfter(last);
+                }
+                List<QueryDocumentSnapshot> page = query.get().get().getDocuments();
+                if (page.isEmpty()) {
+                    break;
+                }
+                last = page.get(page.size() - 1);
+
+                WriteBatch batch = firestore.batch();
+                int count = 0;
+                for (QueryDocumentSnapshot doc : page) {
+                    if (!(doc.get("embedding") instanceof List<?> values) || EmbeddingCodec.decode(values) == null) {
+                        continue;
+                    }
+                    List<Double> embedding = values.stream().map(value -> ((Number) value).doubleValue()).toList();
+                    batch.update(doc.getReference(), faceEmbeddingService.toDocument(embedding),
+                        Precondition.updatedAt(doc.getUpdateTime()));
+                    count++;
+                }
+                if (count == 0) {
+                    continue;
+                }
+
+                try {
+                    batch.commit().get();
+                    migrated += count;
+                } catch (ExecutionException e) {
+                    logger.warn("Failed to migrate a page of face embeddings, retrying on next start: {}", e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Error while migrating face embeddings: {}", e.getMessage());
+        }
+
+        if (migrated > 0) {
+            logger.info("Migrated {} face embeddings to the {} format", migrated, faceEmbeddingService.getStorageFormat());
+        }
+    }
+}
@@ -2,21 +2,17 @@ package hcmut.smart_home.service;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import hcmut.smart_home.dto.FaceEmbedding.FaceEmbedding;
+import hcmut.smart_home.exception.ServiceUnavailableException;
+import hcmut.smart_home.util.EmbeddingCodec;
+import hcmut.smart_home.util.SimilarityKernel;
 
 @Service
 public class FaceEmbeddingService {
@@ -24,19 +20,71 @@ public class FaceEmbeddingService {
     @Value("${face.embedding.threshold}")
     private double threshold;
 
-    @Value("${face.embedding.server.url}")
-    private String faceEmbeddingServerUrl;
+    /**
+     * Storage format of embeddings as arrays of doubles, the only format servers older than the packed format read.
+     */
+    private static final String ARRAY_FORMAT = "array";
+
+    @Value("${face.embedding.storage-format:array}")
+    private String storageFormat;
 
-    private final RestTemplate restTemplate;
+    private final FaceEmbeddingExtractor extractor;
+    private final FaceEmbeddingCache cache;
+    private final FaceImagePreprocessor preprocessor;
 
-    public FaceEmbeddingService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public FaceEmbeddingService(FaceEmbeddingExtractor extractor, FaceEmbeddingCache cache, FaceImagePreprocessor preprocessor) {
+        this.extractor = extractor;
+        this.cache = cache;
+        this.preprocessor = preprocessor;
     }
 
     public double getThreshold() {
         return threshold;
     }
 
+    /**
+     * Whether a similarity between two face embeddings is high enough for them to be the same person.
+     * Used by both identification (1:N) and verification (1:1) logins.
+     *
+     * @param similarity the cosine similarity of the two embeddings
+     * @return {@code true} if the similarity reaches the configured threshold
+     */
+    public boolean isMatch(double similarity) {
+        return similarity >= threshold;
+    }
+
+    /**
+     * Returns the packed format embeddings are stored in, or {@code null} if they are stored as arrays of doubles.
+     */
+    public EmbeddingCodec.Format getStorageFormat() {
+        if (ARRAY_FORMAT.equals(storageFormat.trim().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        return EmbeddingCodec.Format.of(storageFormat);
+    }
+
+    /**
+     * Builds the "face-ids" document of an embedding, packed with {@link EmbeddingCodec} in the configured
+     * storage format, or as an array of doubles while the storage format is "array".
+     *
+     * @param embedding the embedding to store
+     * @return the document fields
+     */
+    public Map<String, Object> toDocument(List<Double> embedding) {
+        EmbeddingCodec.Format format = getStorageFormat();
+        if (format == null) {
+            return Map.of(
+                "embedding", embedding,
+                "dimensions", embedding.size()
+            );
+        }
+        return Map.of(
+            "embedding", EmbeddingCodec.encode(embedding, format),
+            "dimensions", embedding.size(),
+            "format", format.name().toLowerCase(Locale.ROOT)
+        );
+    }
+
     /**
      * Calculates the cosine similarity between two face embeddings.
      *
@@ -54,67 +102,76 @@ public class FaceEmbeddingService {
         if (embedding1 == null || embedding2 == null || embedding1.size() != embedding2.size()) {
             throw new IllegalArgumentException("Embeddings must be non-null and have the same dimensions");
         }
-        
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-        
-        for (int i = 0; i < embedding1.size(); i++) {
-            dotProduct += embedding1.get(i) * embedding2.get(i);
-            norm1 += embedding1.get(i)  * embedding1.get(i) ;
-            norm2 += embedding2.get(i)  * embedding2.get(i) ;
-        }
-        
+
+        return calculateSimilarity(toArray(embedding1), toArray(embedding2));
+    }
+
+    /**
+     * Calculates the cosine similarity between two face embeddings held in primitive arrays.
+     * For L2-normalised embeddings, {@link SimilarityKernel#dot(float[], float[])} gives the same result without the norms.
+     *
+     * @param embedding1 the first embedding vector
+     * @param embedding2 the second embedding vector, with the same length as embedding1
+     * @return the cosine similarity between the two embeddings
+     * @throws IllegalArgumentException if the lengths do not match
+     */
+    public double calculateSimilarity(float[] embedding1, float[] embedding2) {
+        double dotProduct = SimilarityKernel.dot(embedding1, embedding2);
+        double norm1 = SimilarityKernel.dot(embedding1, embedding1);
+        double norm2 = SimilarityKernel.dot(embedding2, embedding2);
+
         return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
     }
 
     /**
-     * Sends an image file to the Face Embedding server to extract face embeddings.
+     * Scores one L2-normalised probe against a gallery of L2-normalised embeddings stored back to back.
      *
-     * <p>This method prepares a multipart/form-data HTTP request containing the provided image file,
-     * sends it to the configured Face Embedding server endpoint, and returns the extracted embedding
-     * information encapsulated in a {@link FaceEmbedding} object.</p>
+     * @param probe the probe embedding
+     * @param gallery the gallery, embedding {@code i} starting at {@code i * probe.length}
+     * @param count the number of gallery embeddings
+     * @return the cosine similarity of the probe with each gallery embedding
+     */
+    public float[] calculateSimilarities(float[] probe, float[] gallery, int count) {
+        float[] scores = new float[count];
+        SimilarityKernel.dotBatch(probe, gallery, count, scores);
+        return scores;
+    }
+
+    private static float[] toArray(List<Double> embedding) {
+        float[] values = new float[embedding.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = embedding.get(i).floatValue();
+        }
+        return values;
+    }
+
+    /**
+     * Extracts the face embedding of an image file with the configured {@link FaceEmbeddingExtractor}.
+     * Images are first shrunk by {@link FaceImagePreprocessor}. Embeddings are cached by the content of the uploaded
+     * image, so a retried submission of the same image is neither processed nor extracted again.
      *
      * @param imageFile the image file containing a face, provided as a {@link MultipartFile}
      * @return a {@link FaceEmbedding} containing the extracted face embedding data
-     * @throws RuntimeException if there is an error reading the image file or communicating with the Face Embedding server
+     * @throws ServiceUnavailableException if the extraction backend is unavailable or overloaded
+     * @throws RuntimeException if there is an error reading the image file or extracting the embedding
      */
     public FaceEmbedding getEmbedding(MultipartFile imageFile) {
+        byte[] image;
         try {
-            // Prepare headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            
-            // Prepare the request body
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            ByteArrayResource resource;
-            try {
-                resource = new ByteArrayResource(imageFile.getBytes()) {
-                    @Override
-                    public String getFilename() {
-                        return imageFile.getOriginalFilename();
-                    }
-                };
-            } catch (IOException e) {
-                throw new RuntimeException("Error occurred while reading image file bytes", e);
-            }
-            body.add("image", resource);
-            
-            // Create the request entity
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-            
-            // Send the request to the Face Embedding server
-            String url = faceEmbeddingServerUrl + "/api/extract-embedding";
-            
-            ResponseEntity<FaceEmbedding> response = restTemplate.postForEntity(
-                    url,
-                    requestEntity,
-                    FaceEmbedding.class
-            );
-            
-            return response.getBody();
-        } catch (RestClientException e) {
-            throw new RuntimeException("Error occurred while communicating with the Face Embedding server", e);
+            image = imageFile.getBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Error occurred while reading image file bytes", e);
         }
+
+        String key = cache.key(image);
+        FaceEmbedding cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        FaceImagePreprocessor.PreparedImage prepared = preprocessor.prepare(image, imageFile.getOriginalFilename());
+        FaceEmbedding embedding = extractor.extract(prepared.bytes(), prepared.filename());
+        cache.put(key, embedding);
+        return embedding;
     }
 }
@@ -0,0 +1,222 @@
+package hcmut.smart_home.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import hcmut.smart_home.exception.InternalServerErrorException;
+import hcmut.smart_home.exception.ServiceUnavailableException;
+import hcmut.smart_home.util.ExifOrientation;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Shrinks uploaded face images before embedding extraction.
+ *
+ * <p>Images are decoded with subsampling (so a 12 MP photo is never fully decoded), rotated upright from their EXIF
+ * orientation, downscaled so their longer side fits {@code face.image.max-dimension}, and re-encoded as JPEG
+ * without metadata. The maximum dimension is larger than the embedding model input because the embedding server
+ * still has to detect the face in the whole image.</p>
+ *
+ * <p>The work runs on a bounded pool: it caps the CPU and the memory of decoded images, and a full queue rejects
+ * requests instead of starving the request threads. Images that cannot be decoded are passed through unchanged so
+ * the extraction backend reports the error.</p>
+ */
+@Service
+public class FaceImagePreprocessor {
+
+    /**
+     * An image ready for embedding extraction.
+     */
+    public record PreparedImage(byte[] bytes, String filename) {}
+
+    private static final Logger logger = LoggerFactory.getLogger(FaceImagePreprocessor.class);
+
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+    private final Timer timer;
+    private final DistributionSummary rawSize;
+    private final DistributionSummary preparedSize;
+
+    public FaceImagePreprocessor(MeterRegistry meterRegistry,
+                                 @Value("${face.image.max-dimension:640}") int maxDimension,
+                                 @Value("${face.image.jpeg-quality:0.85}") float jpegQuality,
+                                 @Value("${face.image.threads:2}") int threads,
+                                 @Value("${face.image.queue-capacity:16}") int queueCapacity) {
+        this.maxDimension = Math.max(1, maxDimension);
+        this.jpegQuality = jpegQuality;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads),
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                Thread thread = new Thread(runnable, "face-image-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        this.timer = Timer.builder("face.image.preprocess")
+            .description("Time spent decoding, downscaling and re-encoding face images, excluding queueing")
+            .register(meterRegistry);
+        this.rawSize = DistributionSummary.builder("face.image.size")
+            .description("Size of face images before and after pre-processing")
+            .baseUnit("bytes")
+            .tag("stage", "raw")
+            .register(meterRegistry);
+        this.preparedSize = DistributionSummary.builder("face.image.size")
+            .description("Size of face images before and after pre-processing")
+            .baseUnit("bytes")
+            .tag("stage", "prepared")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Prepares an uploaded image for embedding extraction.
+     *
+     * @param image the uploaded image
+     * @param filename the original file name, may be {@code null}
+     * @return the compacted JPEG image, or the original image if it cannot be decoded or would not shrink
+     * @throws ServiceUnavailableException if the pre-processing queue is full
+     */
+    public PreparedImage prepare(byte[] image, String filename) {
+        Future<PreparedImage> result;
+        try {
+            result = executor.submit(() -> timer.recordCallable(() -> process(image, filename)));
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException("Face image processing is overloaded");
+        }
+
+        try {
+            PreparedImage prepared = result.get();
+            rawSize.record(image.length);
+            preparedSize.record(prepared.bytes().length);
+            return prepared;
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException();
+        } catch (ExecutionException e) {
+            logger.warn("Failed to pre-process face image, sending it unchanged: {}", e.getCause().getMessage());
+            return new PreparedImage(image, filename);
+        }
+    }
+
+    private PreparedImage process(byte[] image, String filename) throws IOException {
+        BufferedImage decoded = decode(image);
+        if (decoded == null) {
+            return new PreparedImage(image, filename);
+        }
+
+        int orientation = ExifOrientation.read(image);
+        boolean resized = Math.max(decoded.getWidth(), decoded.getHeight()) > maxDimension;
+        BufferedImage upright = ExifOrientation.apply(resize(decoded), orientation);
+        byte[] encoded = encodeJpeg(upright);
+
+        if (!resized && orientation == 1 && encoded.length >= image.length) {
+            return new PreparedImage(image, filename);
+        }
+        return new PreparedImage(encoded, jpegFilename(filename));
+    }
+
+    /**
+     * Decodes an image, skipping source pixels so that it is decoded at no more than twice the target size.
+     *
+     * @return the decoded image, or {@code null} if the format is not supported
+     */
+    private BufferedImage decode(byte[] image) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longSide / (2 * maxDimension));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image so that its longer side fits the maximum dimension, flattening transparency onto white.
+     */
+    private BufferedImage resize(BufferedImage image) {
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String jpegFilename(String filename) {
+        if (filename == null || filename.isBlank()) {
+            return "image.jpg";
+        }
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0 ? filename.substring(0, dot) : filename) + ".jpg";
+    }
+}
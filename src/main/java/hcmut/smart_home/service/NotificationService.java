@@ -1,24 +1,33 @@
 package hcmut.smart_home.service;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import org.springframework.stereotype.Service;
 
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.AggregateQuerySnapshot;
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldPath;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
 
 import hcmut.smart_home.dto.PaginationResponse;
 import hcmut.smart_home.dto.notification.NotificationResponse;
+import hcmut.smart_home.exception.BadRequestException;
 import hcmut.smart_home.exception.InternalServerErrorException;
 
 @Service
 public class NotificationService {
     private final Firestore firestore;
+    private final NotificationWriter notificationWriter;
 
-    public NotificationService(Firestore firestore) {
+    public NotificationService(Firestore firestore, NotificationWriter notificationWriter) {
         this.firestore = firestore;
+        this.notificationWriter = notificationWriter;
     }
 
     public NotificationResponse createNotification(String sensorId) {
@@ -26,47 +35,61 @@ public class NotificationService {
         return new NotificationResponse(docRef.getId(), sensorId);
     }
 
+    /**
+     * Persists a notification asynchronously; the write is batched by {@link NotificationWriter}.
+     *
+     * @param notification the notification to save
+     */
     public void saveNotification(NotificationResponse notification) {
-        try {
-            DocumentReference docRef = firestore.collection("notifications").document(notification.getId());
-            docRef.set(notification).get();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new InternalServerErrorException();
-        } catch (ExecutionException e) {
-            throw new InternalServerErrorException();
-        }
+        notificationWriter.enqueue(notification);
     }
 
     /**
-     * Retrieves a list of notifications associated with a specific sensor ID.
+     * Retrieves one page of the notifications associated with a specific sensor, newest first.
+     *
+     * <p>Pages are read with keyset pagination: the cursor returned as {@code nextCursor} encodes the
+     * timestamp and ID of the last notification of the page, and the next query starts right after it,
+     * so only {@code limit} documents are read per page. Without a cursor, {@code page} is used as an offset.
+     * The total is computed with a count aggregation instead of fetching every document.</p>
      *
      * @param sensorId the ID of the sensor for which notifications are to be retrieved
-     * @return a list of {@link NotificationResponse} objects representing the notifications
+     * @param page the page number, used only when no cursor is given
+     * @param limit the maximum number of notifications per page
+     * @param cursor the opaque {@code nextCursor} of the previous page, or {@code null}
+     * @return a page of {@link NotificationResponse} objects and the cursor of the next page
+     * @throws BadRequestException if the cursor is malformed
      * @throws InternalServerErrorException if an error occurs while fetching the notifications
      */
-    public PaginationResponse<NotificationResponse> getNotifications(String sensorId, int page, int limit) {
+    public PaginationResponse<NotificationResponse> getNotifications(String sensorId, int page, int limit, String cursor) {
         try {
-            List<NotificationResponse> notifications = new ArrayList<>();
-            // Fetch all notifications for the sensor, sorted ascending by timestamp (or createdAt)
-            var querySnapshot = firestore.collection("notifications")
-                    .whereEqualTo("sensorId", sensorId)
-                    .orderBy("timestamp", com.google.cloud.firestore.Query.Direction.DESCENDING)
-                    .get()
-                    .get();
-
-            int total = querySnapshot.size();
-            int fromIndex = Math.max(0, (page - 1) * limit);
-            int toIndex = Math.min(fromIndex + limit, total);
-
-            querySnapshot.getDocuments().subList(fromIndex, toIndex)
-                    .forEach(doc -> notifications.add(new NotificationResponse(doc.getData())));
-
-            boolean hasNextPage = toIndex < total;
-            boolean hasPrevPage = fromIndex > 0;
-
-            NotificationResponse[] dataArr = notifications.toArray(NotificationResponse[]::new);
-            return new PaginationResponse<>(dataArr, page, limit, total, hasNextPage, hasPrevPage);
+            Query sensorQuery = firestore.collection("notifications").whereEqualTo("sensorId", sensorId);
+            ApiFuture<AggregateQuerySnapshot> countFuture = sensorQuery.count().get();
+
+            Query query = sensorQuery
+                    .orderBy("timestamp", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+
+            if (cursor != null && !cursor.isEmpty()) {
+                Object[] position = decodeCursor(cursor);
+                query = query.startAfter(position[0], position[1]);
+            } else if (page > 1) {
+                query = query.offset((page - 1) * limit);
+            }
+
+            // Read one extra document to know whether there is a next page
+            List<QueryDocumentSnapshot> documents = query.limit(limit + 1).get().get().getDocuments();
+            boolean hasNextPage = documents.size() > limit;
+            List<QueryDocumentSnapshot> pageDocuments = hasNextPage ? documents.subList(0, limit) : documents;
+
+            NotificationResponse[] dataArr = pageDocuments.stream()
+                    .map(doc -> new NotificationResponse(doc.getData()))
+                    .toArray(NotificationResponse[]::new);
+
+            String nextCursor = hasNextPage ? encodeCursor(pageDocuments.get(pageDocuments.size() - 1)) : null;
+            boolean hasPrevPage = (cursor != null && !cursor.isEmpty()) || page > 1;
+            long total = countFuture.get().getCount();
+
+            return new PaginationResponse<>(dataArr, page, limit, total, hasNextPage, hasPrevPage, nextCursor);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new InternalServerErrorException();
@@ -74,4 +97,23 @@ public class NotificationService {
             throw new InternalServerErrorException();
         }
     }
+
+    private String encodeCursor(QueryDocumentSnapshot doc) {
+        Long timestamp = doc.getLong("timestamp");
+        String position = (timestamp != null ? timestamp : 0L) + ":" + doc.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            if (separator <= 0 || separator == position.length() - 1) {
+                throw new BadRequestException("Invalid cursor");
+            }
+            return new Object[] { Long.parseLong(position.substring(0, separator)), position.substring(separator + 1) };
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
 }
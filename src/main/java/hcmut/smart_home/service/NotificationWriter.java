@@ -0,0 +1,294 @@
+package hcmut.smart_home.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+
+import hcmut.smart_home.dto.notification.NotificationResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Write-behind pipeline for notifications.
+ *
+ * <p>Notifications are queued without blocking and committed by a single background thread in Firestore
+ * {@link WriteBatch}es, flushed when a batch is full or when the flush interval has elapsed since its first
+ * notification. Failed commits are retried with exponential backoff; batches that still fail, and notifications
+ * that do not fit in the queue, are appended to a local spill file that is replayed once Firestore is reachable.</p>
+ */
+@Service
+public class NotificationWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationWriter.class);
+    private static final int MAX_BATCH_SIZE = 500; // Firestore limit of writes per batch
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final long SPILL_REPLAY_INTERVAL_MS = 30_000;
+
+    private final Firestore firestore;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<NotificationResponse> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Object spillLock = new Object();
+
+    private final Counter written;
+    private final Counter retried;
+    private final Counter spilled;
+
+    private volatile boolean running = true;
+    private Thread worker;
+    private long lastReplayAttempt;
+
+    public NotificationWriter(Firestore firestore, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${notification.writer.queue-capacity:10000}") int queueCapacity,
+                              @Value("${notification.writer.batch-size:100}") int batchSize,
+                              @Value("${notification.writer.flush-interval-ms:1000}") long flushIntervalMs,
+                              @Value("${notification.writer.max-retries:5}") int maxRetries,
+                              @Value("${notification.writer.initial-backoff-ms:500}") long initialBackoffMs,
+                              @Value("${notification.writer.spill-file:notifications-spill.jsonl}") String spillFile) {
+        this.firestore = firestore;
+        this.objectMapper = objectMapper;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.spillFile = Path.of(spillFile);
+        this.replayFile = Path.of(spillFile + ".replaying");
+
+        Gauge.builder("notification.writer.queued", queue, BlockingQueue::size)
+            .description("Notifications waiting to be written to Firestore")
+            .register(meterRegistry);
+        this.written = Counter.builder("notification.writer.written")
+            .description("Notifications committed to Firestore")
+            .register(meterRegistry);
+        this.retried = Counter.builder("notification.writer.retries")
+            .description("Batch commits retried after a failure")
+            .register(meterRegistry);
+        this.spilled = Counter.builder("notification.writer.spilled")
+            .description("Notifications appended to the local spill file")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this::run, "notification-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Anything the worker could not commit in time is kept for the next start
+        List<NotificationResponse> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        spill(remaining);
+    }
+
+    /**
+     * Queues a notification for writing without blocking the caller.
+     * If the queue is full the notification goes straight to the spill file.
+     *
+     * @param notification the notification to persist
+     */
+    public void enqueue(NotificationResponse notification) {
+        if (!queue.offer(notification)) {
+            logger.warn("Notification queue is full, spilling notification {}", notification.getId());
+            spill(List.of(notification));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                NotificationResponse first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    replaySpill();
+                    continue;
+                }
+
+                List<NotificationResponse> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    NotificationResponse next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                write(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in notification writer: ", e);
+            }
+        }
+
+        // Final flush on shutdown, without retries
+        Thread.interrupted();
+        List<NotificationResponse> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            List<NotificationResponse> batch = remaining.subList(from, Math.min(from + batchSize, remaining.size()));
+            if (!commit(batch)) {
+                spill(batch);
+            }
+        }
+    }
+
+    private void write(List<NotificationResponse> batch) throws InterruptedException {
+        long backoffMs = initialBackoffMs;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (commit(batch)) {
+                return;
+            }
+            if (attempt == maxRetries || !running) {
+                break;
+            }
+
+            retried.increment();
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                spill(batch);
+                throw e;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+
+        logger.error("Giving up on {} notifications after {} retries, spilling to {}", batch.size(), maxRetries, spillFile);
+        spill(batch);
+    }
+
+    private boolean commit(List<NotificationResponse> notifications) {
+        try {
+            CollectionReference collection = firestore.collection("notifications");
+            WriteBatch batch = firestore.batch();
+            for (NotificationResponse notification : notifications) {
+                batch.set(collection.document(notification.getId()), notification);
+            }
+            batch.commit().get();
+            written.increment(notifications.size());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RuntimeException e) {
+            logger.warn("Failed to commit {} notifications: {}", notifications.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void spill(List<NotificationResponse> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+
+        synchronized (spillLock) {
+            try (BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (NotificationResponse notification : notifications) {
+                    writer.write(objectMapper.writeValueAsString(notification));
+                    writer.newLine();
+                }
+                spilled.increment(notifications.size());
+            } catch (IOException e) {
+                logger.error("Failed to spill {} notifications, they are lost: ", notifications.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Re-submits spilled notifications. The spill file is moved aside first so that batches failing again
+     * are appended to a fresh spill file, and a replay interrupted by a crash is resumed on the next start.
+     */
+    private void replaySpill() {
+        long now = System.currentTimeMillis();
+        if (now - lastReplayAttempt < SPILL_REPLAY_INTERVAL_MS) {
+            return;
+        }
+        lastReplayAttempt = now;
+
+        List<NotificationResponse> notifications = new ArrayList<>();
+        synchronized (spillLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(spillFile)) {
+                        return;
+                    }
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+                for (String line : Files.readAllLines(replayFile, StandardCharsets.UTF_8)) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        notifications.add(readSpilled(line));
+                    } catch (JsonProcessingException e) {
+                        logger.warn("Skipping malformed spilled notification: {}", e.getOriginalMessage());
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to read spilled notifications: ", e);
+                return;
+            }
+        }
+
+        logger.info("Replaying {} spilled notifications", notifications.size());
+        for (int from = 0; from < notifications.size(); from += batchSize) {
+            List<NotificationResponse> batch = notifications.subList(from, Math.min(from + batchSize, notifications.size()));
+            if (!commit(batch)) {
+                spill(batch);
+            }
+        }
+
+        try {
+            Files.deleteIfExists(replayFile);
+        } catch (IOException e) {
+            logger.error("Failed to delete replayed spill file: ", e);
+        }
+    }
+
+    private NotificationResponse readSpilled(String line) throws JsonProcessingException {
+        Map<?, ?> data = objectMapper.readValue(line, Map.class);
+        return new NotificationResponse(data);
+    }
+}
@@ -0,0 +1,192 @@
+package hcmut.smart_home.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import hcmut.smart_home.dto.FaceEmbedding.FaceEmbedding;
+import hcmut.smart_home.exception.BadRequestException;
+import hcmut.smart_home.exception.InternalServerErrorException;
+import hcmut.smart_home.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Extracts face embeddings in process with an ONNX model loaded from {@code face.embedding.onnx.model-path}.
+ *
+ * <p>The model takes one RGB image in NCHW layout, normalised as {@code (pixel - mean) / std}, and outputs one
+ * embedding. Images are resized to the model input as a whole: the model is expected to handle face detection
+ * and alignment itself, or to be fed images already cropped to the face, like the remote server is.</p>
+ *
+ * <p>Inference runs on a bounded pool so a burst of logins queues up to a limit and is then rejected instead of
+ * exhausting the request threads. The session is warmed up at startup so the first login does not pay for
+ * graph initialisation.</p>
+ */
+@Service
+@ConditionalOnProperty(name = "face.embedding.backend", havingValue = "onnx")
+public class OnnxFaceEmbeddingExtractor implements FaceEmbeddingExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(OnnxFaceEmbeddingExtractor.class);
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final String inputName;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final float mean;
+    private final float std;
+    private final ThreadPoolExecutor inferenceExecutor;
+    private final Timer inferenceTimer;
+
+    public OnnxFaceEmbeddingExtractor(MeterRegistry meterRegistry,
+                                      @Value("${face.embedding.onnx.model-path}") String modelPath,
+                                      @Value("${face.embedding.onnx.input-size:112}") int defaultInputSize,
+                                      @Value("${face.embedding.onnx.mean:127.5}") float mean,
+                                      @Value("${face.embedding.onnx.std:128.0}") float std,
+                                      @Value("${face.embedding.onnx.threads:2}") int threads,
+                                      @Value("${face.embedding.onnx.intra-op-threads:2}") int intraOpThreads,
+                                      @Value("${face.embedding.onnx.queue-capacity:32}") int queueCapacity) throws OrtException {
+        this.environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.setIntraOpNumThreads(Math.max(1, intraOpThreads));
+            this.session = environment.createSession(modelPath, options);
+        }
+
+        this.inputName = session.getInputNames().iterator().next();
+        NodeInfo input = session.getInputInfo().get(inputName);
+        long[] shape = input.getInfo() instanceof TensorInfo tensor ? tensor.getShape() : new long[0];
+        // Dynamic dimensions are negative
+        this.inputHeight = shape.length == 4 && shape[2] > 0 ? (int) shape[2] : defaultInputSize;
+        this.inputWidth = shape.length == 4 && shape[3] > 0 ? (int) shape[3] : defaultInputSize;
+        this.mean = mean;
+        this.std = std;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.inferenceExecutor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads),
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                Thread thread = new Thread(runnable, "face-inference-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        this.inferenceTimer = Timer.builder("face.embedding.inference")
+            .description("Latency of in-process face embedding inference, excluding queueing")
+            .register(meterRegistry);
+        logger.info("Loaded face embedding model {} with input {} of {}x{}", modelPath, inputName, inputWidth, inputHeight);
+    }
+
+    @PostConstruct
+    public void warmUp() throws OrtException {
+        long start = System.nanoTime();
+        infer(new float[3 * inputHeight * inputWidth]);
+        logger.info("Warmed up face embedding model in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @PreDestroy
+    public void shutdown() throws OrtException {
+        inferenceExecutor.shutdownNow();
+        session.close();
+    }
+
+    /**
+     * @throws BadRequestException if the image cannot be decoded
+     * @throws ServiceUnavailableException if the inference queue is full
+     */
+    @Override
+    public FaceEmbedding extract(byte[] image, String filename) {
+        BufferedImage decoded;
+        try {
+            decoded = ImageIO.read(new ByteArrayInputStream(image));
+        } catch (IOException e) {
+            decoded = null;
+        }
+        if (decoded == null) {
+            throw new BadRequestException("Unsupported image format");
+        }
+
+        float[] pixels = preprocess(decoded);
+        Future<float[]> result;
+        try {
+            result = inferenceExecutor.submit(() -> inferenceTimer.recordCallable(() -> infer(pixels)));
+        } catch (RejectedExecutionException e) {
+            throw new ServiceUnavailableException("Face embedding backend is overloaded");
+        }
+
+        try {
+            float[] embedding = result.get();
+            List<Double> values = new ArrayList<>(embedding.length);
+            for (float value : embedding) {
+                values.add((double) value);
+            }
+            return new FaceEmbedding(values, values.size());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error occurred while extracting the face embedding", e.getCause());
+        }
+    }
+
+    /**
+     * Resizes an image to the model input and converts it to normalised RGB planes.
+     */
+    private float[] preprocess(BufferedImage image) {
+        BufferedImage resized = new BufferedImage(inputWidth, inputHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, inputWidth, inputHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        int plane = inputWidth * inputHeight;
+        int[] rgb = resized.getRGB(0, 0, inputWidth, inputHeight, null, 0, inputWidth);
+        float[] pixels = new float[3 * plane];
+        for (int i = 0; i < plane; i++) {
+            pixels[i] = (((rgb[i] >> 16) & 0xff) - mean) / std;
+            pixels[plane + i] = (((rgb[i] >> 8) & 0xff) - mean) / std;
+            pixels[2 * plane + i] = ((rgb[i] & 0xff) - mean) / std;
+        }
+        return pixels;
+    }
+
+    private float[] infer(float[] pixels) throws OrtException {
+        long[] shape = {1, 3, inputHeight, inputWidth};
+        try (OnnxTensor tensor = OnnxTensor.createTensor(environment, FloatBuffer.wrap(pixels), shape);
+             OrtSession.Result output = session.run(Map.of(inputName, tensor))) {
+            return ((float[][]) output.get(0).getValue())[0];
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package hcmut.smart_home.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import hcmut.smart_home.dto.FaceEmbedding.FaceEmbedding;
+import hcmut.smart_home.exception.InternalServerErrorException;
+import hcmut.smart_home.exception.ServiceUnavailableException;
+import hcmut.smart_home.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Extracts face embeddings by calling the face embedding server at {@code face.embedding.server.url}.
+ *
+ * <p>Connection failures, timeouts and server errors are retried with exponential backoff, within a bounded
+ * number of attempts and an overall deadline. Repeated failures open a circuit breaker, during which calls fail
+ * fast instead of tying up request threads on an unreachable server.</p>
+ */
+@Service
+@ConditionalOnProperty(name = "face.embedding.backend", havingValue = "remote", matchIfMissing = true)
+public class RemoteFaceEmbeddingExtractor implements FaceEmbeddingExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteFaceEmbeddingExtractor.class);
+
+    @Value("${face.embedding.server.url}")
+    private String faceEmbeddingServerUrl;
+
+    private final RestTemplate restTemplate;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final Counter retries;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long deadlineMs;
+
+    public RemoteFaceEmbeddingExtractor(RestTemplate restTemplate, MeterRegistry meterRegistry,
+                                        @Value("${face.embedding.client.max-attempts:3}") int maxAttempts,
+                                        @Value("${face.embedding.client.initial-backoff-ms:200}") long initialBackoffMs,
+                                        @Value("${face.embedding.client.deadline-ms:20000}") long deadlineMs,
+                                        @Value("${face.embedding.circuit.failure-threshold:5}") int failureThreshold,
+                                        @Value("${face.embedding.circuit.open-duration-ms:30000}") long openDurationMs) {
+        this.restTemplate = restTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.deadlineMs = deadlineMs;
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDurationMs);
+
+        this.retries = Counter.builder("face.embedding.retries")
+            .description("Calls to the face embedding server retried after a failure")
+            .register(meterRegistry);
+        Gauge.builder("face.embedding.circuit.open", circuitBreaker,
+                breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+            .description("Whether the circuit to the face embedding server is open or half-open")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Sends an image to the Face Embedding server to extract face embeddings.
+     *
+     * <p>This method prepares a multipart/form-data HTTP request containing the image, sends it to the configured
+     * Face Embedding server endpoint, and returns the extracted embedding information encapsulated in a
+     * {@link FaceEmbedding} object.</p>
+     *
+     * @throws ServiceUnavailableException if the Face Embedding server is unreachable or the circuit is open
+     * @throws RuntimeException if the server rejects the request
+     */
+    @Override
+    public FaceEmbedding extract(byte[] image, String filename) {
+        // Prepare headers
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+        // Prepare the request body
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("image", new ByteArrayResource(image) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        });
+
+        // Create the request entity
+        HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
+
+        // Send the request to the Face Embedding server
+        String url = faceEmbeddingServerUrl + "/api/extract-embedding";
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        long backoffMs = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                record("rejected", start);
+                throw new ServiceUnavailableException("Face embedding server is unavailable");
+            }
+
+            try {
+                ResponseEntity<FaceEmbedding> response = restTemplate.postForEntity(
+                        url,
+                        requestEntity,
+                        FaceEmbedding.class
+                );
+                circuitBreaker.recordSuccess();
+                record("success", start);
+                return response.getBody();
+            } catch (HttpClientErrorException e) {
+                // The server is healthy but rejected this image
+                circuitBreaker.recordSuccess();
+                record("client_error", start);
+                throw new RuntimeException("Error occurred while communicating with the Face Embedding server", e);
+            } catch (RestClientException e) {
+                circuitBreaker.recordFailure();
+                boolean retryable = e instanceof ResourceAccessException || e instanceof HttpServerErrorException;
+                long now = System.nanoTime();
+                if (!retryable || attempt >= maxAttempts || now + TimeUnit.MILLISECONDS.toNanos(backoffMs) >= deadline) {
+                    record("failure", start);
+                    logger.warn("Face embedding request failed after {} attempt(s): {}", attempt, e.getMessage());
+                    throw new ServiceUnavailableException("Face embedding server is unavailable");
+                }
+            }
+
+            retries.increment();
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                record("failure", start);
+                throw new InternalServerErrorException();
+            }
+            backoffMs *= 2;
+        }
+    }
+
+    private void record(String outcome, long start) {
+        Timer.builder("face.embedding.request")
+            .description("Latency of calls to the face embedding server, including retries")
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -3,16 +3,22 @@ package hcmut.smart_home.service;
 import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.Firestore;
 import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
@@ -26,26 +32,67 @@ import hcmut.smart_home.dto.notification.NotificationResponse.Type;
 import hcmut.smart_home.dto.sensor.SensorData;
 import hcmut.smart_home.dto.sensor.SensorInfoResponse;
 import hcmut.smart_home.handler.WebSocketNotificationHandler;
-
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Evaluates sensor readings against their thresholds.
+ *
+ * <p>Readings are not evaluated on the Firebase callback thread. Each sensor has a mailbox holding only its
+ * newest unprocessed reading; a bounded worker pool drains the mailboxes, so a slow evaluation delays only
+ * its own sensor and intermediate readings that arrive in the meantime are coalesced.</p>
+ */
 @Service
 public class SensorDataService {
 
     private static final Logger logger = LoggerFactory.getLogger(SensorDataService.class);
     private static final long COOLDOWN_SECONDS = 5;
     private final Map<String, Instant> lastNotificationTimes = new ConcurrentHashMap<>();
-    private final Map<String, ValueEventListener> sensorListeners = new ConcurrentHashMap<>();
+    private final Map<String, SensorStreamHub.Subscription> sensorSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingReadings = new AtomicInteger();
 
     private final WebSocketNotificationHandler webSocketNotificationHandler;
     private final NotificationService notificationService;
-    private final Firestore firestore;
+    private final SensorThresholdCache sensorThresholdCache;
+    private final SensorStreamHub sensorStreamHub;
     private final FirebaseDatabase firebaseDatabase;
+    private final ExecutorService evaluators;
+
+    private final Timer evaluationLag;
+    private final Timer alertLatency;
+    private final Counter coalescedReadings;
 
-    public SensorDataService(NotificationService notificationService, Firestore firestore,
-                             FirebaseDatabase firebaseDatabase, WebSocketNotificationHandler webSocketNotificationHandler) {
+    public SensorDataService(NotificationService notificationService, SensorThresholdCache sensorThresholdCache,
+                             SensorStreamHub sensorStreamHub, FirebaseDatabase firebaseDatabase,
+                             WebSocketNotificationHandler webSocketNotificationHandler, MeterRegistry meterRegistry,
+                             @Value("${sensor.evaluation.threads:4}") int evaluationThreads) {
         this.notificationService = notificationService;
-        this.firestore = firestore;
+        this.sensorThresholdCache = sensorThresholdCache;
+        this.sensorStreamHub = sensorStreamHub;
         this.firebaseDatabase = firebaseDatabase;
         this.webSocketNotificationHandler = webSocketNotificationHandler;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.evaluators = Executors.newFixedThreadPool(Math.max(1, evaluationThreads), runnable -> {
+            Thread thread = new Thread(runnable, "sensor-evaluation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("sensor.evaluation.pending", pendingReadings, AtomicInteger::get)
+            .description("Sensors with a reading waiting to be evaluated")
+            .register(meterRegistry);
+        this.evaluationLag = Timer.builder("sensor.evaluation.lag")
+            .description("Time a reading waits in its sensor mailbox before evaluation starts")
+            .register(meterRegistry);
+        this.alertLatency = Timer.builder("sensor.alert.latency")
+            .description("Time from receiving a reading to dispatching the notification it triggered")
+            .register(meterRegistry);
+        this.coalescedReadings = Counter.builder("sensor.evaluation.coalesced")
+            .description("Readings replaced by a newer reading of the same sensor before being evaluated")
+            .register(meterRegistry);
     }
 
     @PostConstruct
@@ -78,46 +125,53 @@ public class SensorDataService {
         });
     }
 
+    @PreDestroy
+    public void stopEvaluating() {
+        evaluators.shutdownNow();
+    }
+
     private void listenToSensor(String sensorId) {
-        DatabaseReference sensorRef = firebaseDatabase.getReference("data/" + sensorId);
-        SensorData data = new SensorData();
+        SensorMailbox mailbox = new SensorMailbox(sensorId);
 
-        ValueEventListener listener = new ValueEventListener() {
+        SensorStreamHub.Subscription subscription = sensorStreamHub.subscribe("data/" + sensorId, new SensorStreamHub.StreamListener() {
             @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                data.updateData(snapshot.getValue());
-                checkThreshold(sensorId, data);
+            public void onValue(Object value) {
+                mailbox.offer(value);
             }
 
             @Override
-            public void onCancelled(DatabaseError error) {
+            public void onError(DatabaseError error) {
                 logger.error("Error listening to sensor {}: {}", sensorId, error.getMessage());
             }
-        };
+        });
 
-        sensorRef.addValueEventListener(listener);
-        sensorListeners.put(sensorId, listener);
+        SensorStreamHub.Subscription previous = sensorSubscriptions.put(sensorId, subscription);
+        if (previous != null) {
+            previous.unsubscribe();
+        }
         logger.info("Started listening to sensor: {}", sensorId);
     }
 
     private void stopListeningToSensor(String sensorId) {
-        DatabaseReference sensorRef = firebaseDatabase.getReference("data/" + sensorId);
-        ValueEventListener listener = sensorListeners.remove(sensorId);
-        if (listener != null) {
-            sensorRef.removeEventListener(listener);
+        SensorStreamHub.Subscription subscription = sensorSubscriptions.remove(sensorId);
+        if (subscription != null) {
+            subscription.unsubscribe();
             lastNotificationTimes.remove(sensorId);
             logger.info("Stopped listening to sensor: {}", sensorId);
         }
     }
 
-    private void checkThreshold(String sensorId, SensorData data) {
+    private void checkThreshold(String sensorId, SensorData data, long receivedAt) {
         Instant now = Instant.now();
         Instant lastNotification = lastNotificationTimes.get(sensorId);
     
         if (lastNotification == null || now.isAfter(lastNotification.plusSeconds(COOLDOWN_SECONDS))) {
             try {
-                DocumentSnapshot sensorSnapshot = firestore.collection("sensors").document(sensorId).get().get();
-                SensorInfoResponse sensorInfo = new SensorInfoResponse(sensorSnapshot.getData());
+                SensorInfoResponse sensorInfo = sensorThresholdCache.get(sensorId);
+                if (sensorInfo == null) {
+                    logger.info("Sensor {} has no thresholds configured, skipping check.", sensorId);
+                    return;
+                }
     
                 double light = data.getLightIntensity();
                 double humidity = data.getHumidity();
@@ -169,13 +223,9 @@ public class SensorDataService {
                 if (!notification.getDetails().isEmpty()) {
                     sendNotification(notification);
                     lastNotificationTimes.put(sensorId, now);
+                    alertLatency.record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
                 }
     
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.error("Interrupted while checking threshold for sensor {}: ", sensorId, e.getMessage());
-            } catch (ExecutionException e) {
-                logger.error("Error executing Firestore query for sensor {}: ", sensorId, e.getMessage());
             } catch (Exception e) {
                 logger.error("Unexpected error checking threshold for sensor {}: ", sensorId, e.getMessage());
             }
@@ -285,4 +335,60 @@ public class SensorDataService {
         webSocketNotificationHandler.sendNotification(notification.getSensorId(), message);
         notificationService.saveNotification(notification);
     }
-}
\ No newline at end of file
+
+    /**
+     * Latest-wins mailbox of a sensor. Only the newest pending reading is kept, and at most one worker
+     * drains a mailbox at a time, so the sensor's {@link SensorData} is only touched serially.
+     */
+    private final class SensorMailbox {
+        private final String sensorId;
+        private final SensorData data = new SensorData();
+        private final AtomicReference<PendingReading> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private SensorMailbox(String sensorId) {
+            this.sensorId = sensorId;
+        }
+
+        private void offer(Object value) {
+            if (pending.getAndSet(new PendingReading(value, System.nanoTime())) == null) {
+                pendingReadings.incrementAndGet();
+            } else {
+                coalescedReadings.increment();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    evaluators.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            PendingReading reading;
+            while ((reading = pending.getAndSet(null)) != null) {
+                pendingReadings.decrementAndGet();
+                evaluationLag.record(System.nanoTime() - reading.receivedAt(), TimeUnit.NANOSECONDS);
+                try {
+                    data.updateData(reading.value());
+                    checkThreshold(sensorId, data, reading.receivedAt());
+                } catch (RuntimeException e) {
+                    logger.error("Error evaluating reading of sensor {}: ", sensorId, e);
+                }
+            }
+
+            scheduled.set(false);
+            // A reading may have arrived after the last poll but before the flag was cleared
+            if (pending.get() != null) {
+                schedule();
+            }
+        }
+    }
+
+    private record PendingReading(Object value, long receivedAt) {}
+}
@@ -0,0 +1,456 @@
+package hcmut.smart_home.service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+
+/**
+ * Maintains pre-aggregated sensor history in the "sensor_rollups" collection.
+ *
+ * <p>Rollups are derived from the {@code user_sensor} readings the charts read. A periodic refresh scans the readings
+ * written since a watermark persisted in "sensor_rollup_state", recomputes the minute buckets they fall in, and
+ * recomputes the hour, day and month buckets above them from their children (count, sum, min, max and sum of squares
+ * per metric). Every bucket is recomputed and overwritten rather than incremented, so replays, restarts and several
+ * instances refreshing at once never count a reading twice. The watermark survives restarts, so readings written
+ * while the server was down are picked up by the next refresh, and each refresh rescans a late window before the
+ * watermark for readings that arrived late.</p>
+ *
+ * <p>All timestamps are epoch seconds, like the {@code timestamp} of {@code user_sensor} readings, and all buckets are
+ * aligned in UTC, like the chart periods. Each rollup records the part of its bucket it covers: {@code from} is later
+ * than the bucket start when the bucket began before rollups were maintained, and {@code through} is earlier than the
+ * bucket end while the bucket is still being filled. Charts read raw readings for the parts not covered.</p>
+ */
+@Service
+public class SensorRollupService {
+
+    public enum Resolution {
+        MINUTE, HOUR, DAY, MONTH;
+
+        /**
+         * Returns the start of the bucket containing the given instant, in epoch seconds.
+         */
+        public long bucketStart(long epochSecond) {
+            ZonedDateTime dt = Instant.ofEpochSecond(epochSecond).atZone(ZONE);
+            ZonedDateTime start = switch (this) {
+                case MINUTE -> dt.truncatedTo(ChronoUnit.MINUTES);
+                case HOUR -> dt.truncatedTo(ChronoUnit.HOURS);
+                case DAY -> dt.truncatedTo(ChronoUnit.DAYS);
+                case MONTH -> dt.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+            };
+            return start.toEpochSecond();
+        }
+
+        /**
+         * Returns the exclusive end of the bucket starting at the given instant, in epoch seconds.
+         */
+        public long bucketEnd(long bucketStart) {
+            return switch (this) {
+                case MINUTE -> bucketStart + 60;
+                case HOUR -> bucketStart + 3600;
+                case DAY -> bucketStart + 86400;
+                case MONTH -> Instant.ofEpochSecond(bucketStart).atZone(ZONE).plusMonths(1).toEpochSecond();
+            };
+        }
+
+        private Resolution child() {
+            return values()[ordinal() - 1];
+        }
+
+        /**
+         * The name of the resolution in persisted rollups, independent of the default locale.
+         */
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static final List<String> FIELDS = List.of("humidity", "light_intensity", "temperature");
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorRollupService.class);
+    private static final ZoneId ZONE = ZoneId.of("UTC");
+    private static final String COLLECTION = "sensor_rollups";
+    private static final String STATE_COLLECTION = "sensor_rollup_state";
+    private static final String STATE_DOCUMENT = "watermark";
+    private static final int MAX_BATCH_SIZE = 500; // Firestore limit of writes per batch
+
+    private final Firestore firestore;
+    private final long lateWindowSeconds;
+    private final long scanWindowSeconds;
+    private final long configuredStart;
+    private final int pageSize;
+
+    public SensorRollupService(Firestore firestore,
+                               @Value("${sensor.rollup.late-window-seconds:600}") long lateWindowSeconds,
+                               @Value("${sensor.rollup.scan-window-seconds:3600}") long scanWindowSeconds,
+                               @Value("${sensor.rollup.start:0}") long configuredStart,
+                               @Value("${sensor.rollup.page-size:1000}") int pageSize) {
+        this.firestore = firestore;
+        this.lateWindowSeconds = Math.max(0, lateWindowSeconds);
+        this.scanWindowSeconds = Math.max(60, scanWindowSeconds / 60 * 60);
+        this.configuredStart = configuredStart;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Reads the rollups of a sensor for the given buckets.
+     *
+     * @param sensorId the ID of the sensor
+     * @param resolution the bucket resolution
+     * @param bucketStarts the bucket starts, in epoch seconds
+     * @return the rollups found, keyed by bucket start; buckets without a rollup are absent
+     */
+    public Map<Long, Rollup> getRollups(String sensorId, Resolution resolution, List<Long> bucketStarts)
+            throws InterruptedException, ExecutionException {
+        if (bucketStarts.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, Rollup> result = new HashMap<>();
+        for (Rollup rollup : read(sensorId, resolution, bucketStarts)) {
+            result.put(rollup.getBucket(), rollup);
+        }
+        return result;
+    }
+
+    /**
+     * Brings the rollups up to date with the readings written since the last refresh.
+     * Failed refreshes leave the watermark where it was and are retried on the next refresh.
+     */
+    @Scheduled(fixedDelayString = "${sensor.rollup.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            long now = Instant.now().getEpochSecond();
+            long[] state = readState(now);
+            long since = state[0];
+            long watermark = state[1];
+
+            long start = Resolution.MINUTE.bucketStart(Math.max(since, watermark - lateWindowSeconds));
+            while (start < now && !Thread.currentThread().isInterrupted()) {
+                long end = Math.min(start + scanWindowSeconds, now);
+                refreshWindow(start, end, since);
+                advanceWatermark(end);
+                start = end;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Failed to refresh sensor rollups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the refresh state, creating it on the first run. Rollups start at {@code sensor.rollup.start} if set,
+     * otherwise one late window before now.
+     */
+    private long[] readState(long now) throws InterruptedException, ExecutionException {
+        DocumentReference ref = firestore.collection(STATE_COLLECTION).document(STATE_DOCUMENT);
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot state = transaction.get(ref).get();
+            Long since = state.getLong("since");
+            Long watermark = state.getLong("watermark");
+            if (since != null && watermark != null) {
+                return new long[] {since, watermark};
+            }
+            long start = Resolution.MINUTE.bucketStart(configuredStart > 0 ? configuredStart : now - lateWindowSeconds);
+            transaction.set(ref, Map.of("since", start, "watermark", start));
+            return new long[] {start, start};
+        }).get();
+    }
+
+    private void advanceWatermark(long watermark) throws InterruptedException, ExecutionException {
+        DocumentReference ref = firestore.collection(STATE_COLLECTION).document(STATE_DOCUMENT);
+        firestore.runTransaction(transaction -> {
+            Long current = transaction.get(ref).get().getLong("watermark");
+            if (current == null || current < watermark) {
+                transaction.update(ref, "watermark", watermark);
+            }
+            return null;
+        }).get();
+    }
+
+    /**
+     * Recomputes the rollups of every sensor with readings in {@code [start, end)}, where {@code start} is the start
+     * of a minute. Minutes of the window without readings get empty rollups, so they are known to be covered.
+     */
+    private void refreshWindow(long start, long end, long since) throws InterruptedException, ExecutionException {
+        Map<String, Map<Long, Rollup>> minutes = new HashMap<>();
+
+        String[] projection = new String[FIELDS.size() + 2];
+        projection[0] = "sensorId";
+        projection[1] = "timestamp";
+        for (int i = 0; i < FIELDS.size(); i++) {
+            projection[i + 2] = FIELDS.get(i);
+        }
+        Query query = firestore.collection("user_sensor")
+            .whereGreaterThanOrEqualTo("timestamp", start)
+            .whereLessThan("timestamp", end)
+            .orderBy("timestamp")
+            .select(projection);
+
+        Query page = query.limit(pageSize);
+        while (true) {
+            List<QueryDocumentSnapshot> docs = page.get().get().getDocuments();
+            for (QueryDocumentSnapshot doc : docs) {
+                String sensorId = doc.getString("sensorId");
+                Long timestamp = doc.getLong("timestamp");
+                if (sensorId == null || timestamp == null) continue;
+
+                Rollup rollup = minutes.computeIfAbsent(sensorId, id -> emptyMinutes(id, start, end, since))
+                    .get(Resolution.MINUTE.bucketStart(timestamp));
+                for (int i = 0; i < FIELDS.size(); i++) {
+                    if (doc.get(FIELDS.get(i)) instanceof Number value) {
+                        rollup.add(i, value.doubleValue());
+                    }
+                }
+            }
+            if (docs.size() < pageSize) break;
+            page = query.startAfter(docs.get(docs.size() - 1)).limit(pageSize);
+        }
+
+        for (Map.Entry<String, Map<Long, Rollup>> entry : minutes.entrySet()) {
+            String sensorId = entry.getKey();
+            save(new ArrayList<>(entry.getValue().values()));
+
+            for (Resolution resolution : List.of(Resolution.HOUR, Resolution.DAY, Resolution.MONTH)) {
+                List<Rollup> parents = new ArrayList<>();
+                for (long bucket = resolution.bucketStart(start); bucket < end; bucket = resolution.bucketEnd(bucket)) {
+                    parents.add(fromChildren(sensorId, resolution, bucket, since, end));
+                }
+                save(parents);
+            }
+        }
+    }
+
+    private static Map<Long, Rollup> emptyMinutes(String sensorId, long start, long end, long since) {
+        Map<Long, Rollup> minutes = new LinkedHashMap<>();
+        for (long minute = start; minute < end; minute += 60) {
+            minutes.put(minute, new Rollup(sensorId, Resolution.MINUTE, minute, Math.max(minute, since), end));
+        }
+        return minutes;
+    }
+
+    /**
+     * Recomputes a bucket from the stored rollups of its children.
+     */
+    private Rollup fromChildren(String sensorId, Resolution resolution, long bucket, long since, long through)
+            throws InterruptedException, ExecutionException {
+        Resolution child = resolution.child();
+        List<Long> children = new ArrayList<>();
+        for (long start = bucket; start < resolution.bucketEnd(bucket); start = child.bucketEnd(start)) {
+            children.add(start);
+        }
+
+        Rollup rollup = new Rollup(sensorId, resolution, bucket, Math.max(bucket, since), through);
+        for (Rollup stored : read(sensorId, child, children)) {
+            rollup.merge(stored);
+        }
+        return rollup;
+    }
+
+    /**
+     * Writes the rollups whose content or coverage differs from the stored ones.
+     */
+    private void save(List<Rollup> rollups) throws InterruptedException, ExecutionException {
+        if (rollups.isEmpty()) {
+            return;
+        }
+        Rollup first = rollups.get(0);
+        Map<Long, Rollup> stored = getRollups(first.sensorId, first.resolution,
+            rollups.stream().map(Rollup::getBucket).toList());
+
+        CollectionReference collection = firestore.collection(COLLECTION);
+        WriteBatch batch = firestore.batch();
+        int writes = 0;
+        for (Rollup rollup : rollups) {
+            if (!rollup.supersedes(stored.get(rollup.bucket))) continue;
+
+            batch.set(collection.document(documentId(rollup.sensorId, rollup.resolution, rollup.bucket)), rollup.toDocument());
+            if (++writes == MAX_BATCH_SIZE) {
+                batch.commit().get();
+                batch = firestore.batch();
+                writes = 0;
+            }
+        }
+        if (writes > 0) {
+            batch.commit().get();
+        }
+    }
+
+    /**
+     * Reads the rollups of the given buckets. Documents written before rollups recorded their coverage are ignored.
+     */
+    private List<Rollup> read(String sensorId, Resolution resolution, List<Long> bucketStarts)
+            throws InterruptedException, ExecutionException {
+        CollectionReference collection = firestore.collection(COLLECTION);
+        DocumentReference[] refs = bucketStarts.stream()
+            .map(bucket -> collection.document(documentId(sensorId, resolution, bucket)))
+            .toArray(DocumentReference[]::new);
+
+        List<Rollup> rollups = new ArrayList<>();
+        for (DocumentSnapshot doc : firestore.getAll(refs).get()) {
+            if (doc.exists() && doc.getLong("from") != null && doc.getLong("through") != null) {
+                rollups.add(Rollup.fromDocument(sensorId, resolution, doc));
+            }
+        }
+        return rollups;
+    }
+
+    static String documentId(String sensorId, Resolution resolution, long bucket) {
+        return sensorId + "_" + resolution.key() + "_" + bucket;
+    }
+
+    /**
+     * Count, sum, min, max and sum of squares of each metric over one bucket of a sensor, computed from the
+     * readings in {@code [from, through)}. Metrics are indexed like {@link SensorRollupService#FIELDS}.
+     */
+    public static final class Rollup {
+        private final String sensorId;
+        private final Resolution resolution;
+        private final long bucket;
+        private final long from;
+        private final long through;
+        private final long[] count = new long[FIELDS.size()];
+        private final double[] sum = new double[FIELDS.size()];
+        private final double[] min = new double[FIELDS.size()];
+        private final double[] max = new double[FIELDS.size()];
+        private final double[] sumSq = new double[FIELDS.size()];
+
+        private Rollup(String sensorId, Resolution resolution, long bucket, long from, long through) {
+            this.sensorId = sensorId;
+            this.resolution = resolution;
+            this.bucket = bucket;
+            this.from = from;
+            this.through = through;
+        }
+
+        public long getBucket() {
+            return bucket;
+        }
+
+        /**
+         * The start of the covered part of the bucket, after the bucket start if the bucket predates the rollups.
+         */
+        public long getFrom() {
+            return from;
+        }
+
+        /**
+         * The exclusive end of the covered part of the bucket, before the bucket end while it is being filled.
+         */
+        public long getThrough() {
+            return through;
+        }
+
+        public long getCount(int field) {
+            return count[field];
+        }
+
+        public double getSum(int field) {
+            return sum[field];
+        }
+
+        public double getMin(int field) {
+            return min[field];
+        }
+
+        public double getMax(int field) {
+            return max[field];
+        }
+
+        /**
+         * The sum of squares of a metric, {@link Double#NaN} if it is unknown.
+         */
+        public double getSumSq(int field) {
+            return sumSq[field];
+        }
+
+        private void add(int field, double value) {
+            if (count[field] == 0 || value < min[field]) min[field] = value;
+            if (count[field] == 0 || value > max[field]) max[field] = value;
+            count[field]++;
+            sum[field] += value;
+            sumSq[field] += value * value;
+        }
+
+        private void merge(Rollup other) {
+            for (int i = 0; i < FIELDS.size(); i++) {
+                if (other.count[i] == 0) continue;
+                if (count[i] == 0 || other.min[i] < min[i]) min[i] = other.min[i];
+                if (count[i] == 0 || other.max[i] > max[i]) max[i] = other.max[i];
+                count[i] += other.count[i];
+                sum[i] += other.sum[i];
+                sumSq[i] += other.sumSq[i];
+            }
+        }
+
+        /**
+         * Whether this rollup should replace the stored one: its values differ, or it covers more of the bucket.
+         */
+        private boolean supersedes(Rollup stored) {
+            if (stored == null || stored.from != from) {
+                return true;
+            }
+            boolean sameValues = Arrays.equals(count, stored.count) && Arrays.equals(sum, stored.sum)
+                && Arrays.equals(min, stored.min) && Arrays.equals(max, stored.max) && Arrays.equals(sumSq, stored.sumSq);
+            return !sameValues || (stored.through < resolution.bucketEnd(bucket) && through > stored.through);
+        }
+
+        private Map<String, Object> toDocument() {
+            Map<String, Object> doc = new HashMap<>();
+            doc.put("sensorId", sensorId);
+            doc.put("resolution", resolution.key());
+            doc.put("bucket", bucket);
+            doc.put("from", from);
+            doc.put("through", through);
+            for (int i = 0; i < FIELDS.size(); i++) {
+                if (count[i] == 0) continue;
+                Map<String, Object> stats = new HashMap<>(Map.of("count", count[i], "sum", sum[i], "min", min[i], "max", max[i]));
+                if (!Double.isNaN(sumSq[i])) {
+                    stats.put("sumSq", sumSq[i]);
+                }
+                doc.put(FIELDS.get(i), stats);
+            }
+            return doc;
+        }
+
+        private static Rollup fromDocument(String sensorId, Resolution resolution, DocumentSnapshot doc) {
+            Long bucket = doc.getLong("bucket");
+            Rollup rollup = new Rollup(sensorId, resolution, bucket == null ? 0 : bucket,
+                doc.getLong("from"), doc.getLong("through"));
+            for (int i = 0; i < FIELDS.size(); i++) {
+                if (!(doc.get(FIELDS.get(i)) instanceof Map<?, ?> stats)) continue;
+                if (!(stats.get("count") instanceof Number n) || n.longValue() == 0) continue;
+                rollup.count[i] = n.longValue();
+                rollup.sum[i] = stats.get("sum") instanceof Number s ? s.doubleValue() : 0;
+                rollup.min[i] = stats.get("min") instanceof Number m ? m.doubleValue() : 0;
+                rollup.max[i] = stats.get("max") instanceof Number m ? m.doubleValue() : 0;
+                // Without the sum of squares the standard deviation is unknown, not 0
+                rollup.sumSq[i] = stats.get("sumSq") instanceof Number q ? q.doubleValue() : Double.NaN;
+            }
+            return rollup;
+        }
+    }
+}
@@ -1,16 +1,27 @@
 package hcmut.smart_home.service;
 
-import java.time.Instant;
 import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.google.api.core.ApiFuture;
@@ -37,16 +48,49 @@ import hcmut.smart_home.exception.ForbiddenException;
 import hcmut.smart_home.exception.InternalServerErrorException;
 import hcmut.smart_home.exception.NotFoundException;
 import hcmut.smart_home.handler.WebSocketNotificationHandler;
+import hcmut.smart_home.util.BucketAggregator;
+import hcmut.smart_home.util.Lttb;
 
 @Service
 public class SensorService {
 
+    private static final int MAX_CHART_POINTS = 10_000;
+    private static final int MAX_CHART_SUB_RANGES = 32;
+    private static final long MIN_CHART_SUB_RANGE_SECONDS = 3600;
+
     private final Firestore firestore;
     private final WebSocketNotificationHandler webSocketNotificationHandler;
-
-    public SensorService(Firestore firestore, WebSocketNotificationHandler webSocketNotificationHandler) {
+    private final SensorThresholdCache sensorThresholdCache;
+    private final SensorRollupService sensorRollupService;
+    private final ChartCache chartCache;
+    private final int chartPageSize;
+    private final long maxRangeReadings;
+    private final ExecutorService chartExecutor;
+
+    public SensorService(Firestore firestore, WebSocketNotificationHandler webSocketNotificationHandler,
+                         SensorThresholdCache sensorThresholdCache, SensorRollupService sensorRollupService,
+                         ChartCache chartCache, @Value("${chart.query.page-size:1000}") int chartPageSize,
+                         @Value("${chart.query.parallelism:4}") int chartParallelism,
+                         @Value("${chart.range.max-readings:500000}") long maxRangeReadings) {
         this.firestore = firestore;
         this.webSocketNotificationHandler = webSocketNotificationHandler;
+        this.sensorThresholdCache = sensorThresholdCache;
+        this.sensorRollupService = sensorRollupService;
+        this.chartCache = chartCache;
+        this.chartPageSize = Math.max(1, chartPageSize);
+        this.maxRangeReadings = Math.max(1, maxRangeReadings);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.chartExecutor = Executors.newFixedThreadPool(Math.max(1, chartParallelism), runnable -> {
+            Thread thread = new Thread(runnable, "chart-query-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        chartExecutor.shutdownNow();
     }
 
     /**
@@ -192,6 +236,7 @@ public class SensorService {
 
             if (hasUpdates) {
                 batch.commit().get();
+                sensorThresholdCache.put(sensorId, sensorInfo);
             }
 
             return sensorInfo;
@@ -261,6 +306,7 @@ public class SensorService {
                     requestSnapshot.getDocuments().forEach(doc -> batch.delete(doc.getReference()));
     
                     batch.commit().get(); // Execute batch operations
+                    sensorThresholdCache.put(sensorId, sensorInfo);
     
                     return new SingleResponse("Sensor assigned to user.");
                 }
@@ -305,6 +351,7 @@ public class SensorService {
             requestSnapshot.getDocuments().forEach(doc -> batch.delete(doc.getReference()));
     
             batch.commit().get(); // Execute batch operations
+            sensorThresholdCache.put(sensorId, sensorInfo);
     
             return new SingleResponse("Sensor created and assigned to user.");
     
@@ -719,7 +766,11 @@ public class SensorService {
      *
      * <p>This method fetches sensor readings for a specific user and sensor, within a specified time range and granularity
      * (year, month, day, hour, or minute). It groups the data according to the granularity and computes the average value
-     * for each group. Optionally, it filters the data by minimum and/or maximum values for the specified field.</p>
+     * for each group, along with its minimum, maximum, count and standard deviation. Optionally, it filters the data by
+     * minimum and/or maximum values for the specified field.</p>
+     *
+     * <p>Without value filters, groups are read from the rollups maintained by {@link SensorRollupService};
+     * raw readings are only aggregated for the minute granularity, for filtered queries, and for periods without rollups.</p>
      *
      * @param userId       The ID of the user whose sensor data is to be retrieved.
      * @param field        The sensor field to aggregate ("humidity", "light_intensity", or "temperature").
@@ -731,7 +782,7 @@ public class SensorService {
      * @param day          The day component (required for "day", "hour", "minute" granularities).
      * @param hour         The hour component (required for "hour", "minute" granularities).
      * @param minute       The minute component (required for "minute" granularity).
-     * @return             A list of {@link FilterResponse} objects, each containing a label (time group) and the average value.
+     * @return             A list of {@link FilterResponse} objects, each containing a label (time group) and the statistics of its values.
      * @throws BadRequestException         If required parameters are missing or invalid.
      * @throws NotFoundException           If the user is not found.
      * @throws ForbiddenException          If the user does not have an associated sensor.
@@ -740,9 +791,62 @@ public class SensorService {
     public List<FilterResponse> getChartFilters(String userId, String field, Double min, Double max,
                                             String granularity, Integer year, Integer month,
                                             Integer day, Integer hour, Integer minute) {
+        if (field == null || !SensorRollupService.FIELDS.contains(field)) {
+            throw new BadRequestException("Field must be 'humidity', 'light_intensity' or 'temperature'");
+        }
+
+        return getChart(userId, List.of(field), min, max, granularity, year, month, day, hour, minute).getSeries().get(field);
+    }
+
+    /**
+     * Retrieves the chart series of several fields at once, see
+     * {@link #getChartFilters(String, String, Double, Double, String, Integer, Integer, Integer, Integer, Integer)}.
+     *
+     * <p>All series are built from a single query (or a single rollup read) in one aggregation pass.
+     * Value filters are only supported when a single field is requested.</p>
+     *
+     * @param userId       The ID of the user whose sensor data is to be retrieved.
+     * @param fields       The sensor fields to aggregate ("humidity", "light_intensity", and/or "temperature").
+     * @param min          Optional minimum value filter, only allowed with a single field.
+     * @param max          Optional maximum value filter, only allowed with a single field.
+     * @param granularity  The time granularity for grouping ("year", "month", "day", "hour", or "minute").
+     * @param year         The year component for the time range (required for all granularities).
+     * @param month        The month component (required for "month", "day", "hour", "minute" granularities).
+     * @param day          The day component (required for "day", "hour", "minute" granularities).
+     * @param hour         The hour component (required for "hour", "minute" granularities).
+     * @param minute       The minute component (required for "minute" granularity).
+     * @return             The series of each requested field, keyed by field in request order.
+     * @throws BadRequestException         If required parameters are missing or invalid.
+     * @throws NotFoundException           If the user is not found.
+     * @throws ForbiddenException          If the user does not have an associated sensor.
+     * @throws InternalServerErrorException If an internal error occurs during data retrieval.
+     */
+    public Map<String, List<FilterResponse>> getChartSeries(String userId, List<String> fields, Double min, Double max,
+                                                           String granularity, Integer year, Integer month,
+                                                           Integer day, Integer hour, Integer minute) {
+        return getChart(userId, fields, min, max, granularity, year, month, day, hour, minute).getSeries();
+    }
+
+    /**
+     * Same as {@link #getChartSeries(String, List, Double, Double, String, Integer, Integer, Integer, Integer, Integer)},
+     * but returns the {@link ChartCache} entry so that callers can also use its HTTP cache validators.
+     * Charts are served from the cache when possible.
+     */
+    public ChartCache.Entry getChart(String userId, List<String> fields, Double min, Double max,
+                                     String granularity, Integer year, Integer month,
+                                     Integer day, Integer hour, Integer minute) {
         try {
-            if (field == null || !List.of("humidity", "light_intensity", "temperature").contains(field)) {
-                throw new BadRequestException("Field must be 'humidity', 'light_intensity' or 'temperature'");
+            if (fields == null || fields.isEmpty()) {
+                throw new BadRequestException("At least one field is required");
+            }
+            fields = fields.stream().distinct().toList();
+            for (String field : fields) {
+                if (!SensorRollupService.FIELDS.contains(field)) {
+                    throw new BadRequestException("Field must be 'humidity', 'light_intensity' or 'temperature'");
+                }
+            }
+            if ((min != null || max != null) && fields.size() > 1) {
+                throw new BadRequestException("Min and max filters require a single field");
             }
 
             if (granularity == null || !List.of("year", "month", "day", "hour", "minute").contains(granularity)) {
@@ -795,40 +899,12 @@ public class SensorService {
             long startEpoch = from.toEpochSecond();
             long endEpoch = to.toEpochSecond();
 
-            Query query = firestore.collection("user_sensor")
-                .whereEqualTo("sensorId", sensorId)
-                .whereGreaterThanOrEqualTo("timestamp", startEpoch)
-                .whereLessThanOrEqualTo("timestamp", endEpoch);
-
-            if (min != null) query = query.whereGreaterThanOrEqualTo(field, min);
-            if (max != null) query = query.whereLessThanOrEqualTo(field, max);
-
-            query = query.orderBy("timestamp");
-            List<QueryDocumentSnapshot> docs = query.get().get().getDocuments();
-
-            Map<String, List<Double>> grouped = new HashMap<>();
-            for (QueryDocumentSnapshot doc : docs) {
-                Long timestamp = doc.getLong("timestamp");
-                Double value = doc.getDouble(field);
-                if (timestamp == null || value == null) continue;
-
-                ZonedDateTime dt = Instant.ofEpochSecond(timestamp).atZone(zoneId);
-                String key;
-
-                key = switch (granularity) {
-                    case "year" -> String.valueOf(dt.getMonthValue()); // 1-12
-                    case "month" -> String.valueOf(dt.getDayOfMonth()); // 1-31
-                    case "day" -> String.valueOf(dt.getHour()); // 0-23
-                    case "hour" -> String.valueOf(dt.getMinute()); // 0-59
-                    case "minute" -> String.valueOf(dt.getSecond()); // 0-59
-                    default -> "unknown";
-                };
-
-                grouped.computeIfAbsent(key, _ -> new ArrayList<>()).add(value);
+            ChartCache.Key key = new ChartCache.Key(sensorId, fields, granularity, startEpoch, min, max);
+            ChartCache.Entry cached = chartCache.get(key);
+            if (cached != null) {
+                return cached;
             }
 
-            List<FilterResponse> result = new ArrayList<>();
-
             int start;
             int end;
             int[] range = switch (granularity) {
@@ -844,13 +920,136 @@ public class SensorService {
             start = range[0];
             end = range[1];
 
-            for (int i = start; i <= end; i++) {
-                String label = String.valueOf(i);
-                List<Double> values = grouped.getOrDefault(label, new ArrayList<>());
-                double avg = values.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-                result.add(new FilterResponse(label, avg));
+            // One bucket per label: months of the year, days of the month, hours of the day, ...
+            ChronoUnit unit = switch (granularity) {
+                case "year" -> ChronoUnit.MONTHS;
+                case "month" -> ChronoUnit.DAYS;
+                case "day" -> ChronoUnit.HOURS;
+                case "hour" -> ChronoUnit.MINUTES;
+                default -> ChronoUnit.SECONDS;
+            };
+            long[] bucketStarts = new long[end - start + 1];
+            for (int i = 0; i < bucketStarts.length; i++) {
+                bucketStarts[i] = from.plus(i, unit).toEpochSecond();
+            }
+            BucketAggregator[] aggregators = new BucketAggregator[fields.size()];
+            for (int f = 0; f < aggregators.length; f++) {
+                aggregators[f] = new BucketAggregator(bucketStarts, endEpoch + 1);
+            }
+
+            // Value filters need the raw readings, otherwise read one pre-aggregated bucket per label
+            SensorRollupService.Resolution resolution = switch (granularity) {
+                case "year" -> SensorRollupService.Resolution.MONTH;
+                case "month" -> SensorRollupService.Resolution.DAY;
+                case "day" -> SensorRollupService.Resolution.HOUR;
+                case "hour" -> SensorRollupService.Resolution.MINUTE;
+                default -> null;
+            };
+            String field = fields.get(0);
+            Query query = firestore.collection("user_sensor").whereEqualTo("sensorId", sensorId);
+
+            if (min != null) query = query.whereGreaterThanOrEqualTo(field, min);
+            if (max != null) query = query.whereLessThanOrEqualTo(field, max);
+
+            if (resolution == null || min != null || max != null) {
+                aggregateReadings(query, startEpoch, endEpoch + 1, fields, aggregators);
+            } else {
+                long[] rawFrom = aggregateRollups(sensorId, fields, resolution, aggregators);
+                aggregateUncovered(query, rawFrom, fields, aggregators);
+            }
+
+            Map<String, List<FilterResponse>> result = new LinkedHashMap<>();
+            for (int f = 0; f < aggregators.length; f++) {
+                BucketAggregator aggregator = aggregators[f];
+                List<FilterResponse> series = new ArrayList<>(aggregator.size());
+                for (int i = 0; i < aggregator.size(); i++) {
+                    series.add(new FilterResponse(String.valueOf(start + i), aggregator.getMean(i),
+                        aggregator.getMin(i), aggregator.getMax(i), aggregator.getCount(i), aggregator.getStddev(i)));
+                }
+                result.put(fields.get(f), series);
+            }
+
+            return chartCache.put(key, result, endEpoch + 1);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException();
+        } catch (ExecutionException e) {
+            throw new InternalServerErrorException();
+        }
+    }
+
+    /**
+     * Retrieves the readings of a field over an arbitrary time range, either aggregated into fixed-size buckets
+     * or downsampled to a maximum number of points with Largest-Triangle-Three-Buckets.
+     *
+     * <p>Readings are read in bounded pages and folded into primitive arrays as they arrive, so the range
+     * is never materialised as documents. Exactly one of {@code bucket} and {@code maxPoints} must be given.
+     * Downsampling needs every raw reading of the range at once, so it is rejected for ranges holding more than
+     * {@code chart.range.max-readings} readings; bucketed ranges have no such limit.</p>
+     *
+     * @param userId    The ID of the user whose sensor data is to be retrieved.
+     * @param field     The sensor field ("humidity", "light_intensity", or "temperature").
+     * @param from      The start of the range, in epoch seconds (inclusive).
+     * @param to        The end of the range, in epoch seconds (exclusive).
+     * @param bucket    Optional bucket size in seconds; each bucket is labelled with its start.
+     * @param maxPoints Optional maximum number of raw points to return; each point is labelled with its timestamp.
+     * @return          A list of {@link FilterResponse} objects in chronological order.
+     * @throws BadRequestException         If the parameters are missing or invalid, or the range holds too many
+     *                                     readings to downsample.
+     * @throws NotFoundException           If the user is not found.
+     * @throws ForbiddenException          If the user does not have an associated sensor.
+     * @throws InternalServerErrorException If an internal error occurs during data retrieval.
+     */
+    public List<FilterResponse> getChartRange(String userId, String field, Long from, Long to, Long bucket, Integer maxPoints) {
+        try {
+            if (field == null || !SensorRollupService.FIELDS.contains(field)) {
+                throw new BadRequestException("Field must be 'humidity', 'light_intensity' or 'temperature'");
+            }
+            if (from == null || to == null || from >= to) {
+                throw new BadRequestException("From must be before to");
+            }
+            if ((bucket == null) == (maxPoints == null)) {
+                throw new BadRequestException("Exactly one of bucket and maxPoints is required");
+            }
+            if (bucket != null && (bucket <= 0 || (to - from + bucket - 1) / bucket > MAX_CHART_POINTS)) {
+                throw new BadRequestException("Bucket must be positive and produce at most " + MAX_CHART_POINTS + " buckets");
+            }
+            if (maxPoints != null && (maxPoints < 3 || maxPoints > MAX_CHART_POINTS)) {
+                throw new BadRequestException("MaxPoints must be between 3 and " + MAX_CHART_POINTS);
+            }
+
+            DocumentSnapshot userSnapshot = firestore.collection("users").document(userId).get().get();
+            if (!userSnapshot.exists()) throw new NotFoundException("User not found");
+
+            String sensorId = userSnapshot.getString("sensorId");
+            if (sensorId == null) throw new ForbiddenException("No sensor for this user");
+
+            Query query = firestore.collection("user_sensor").whereEqualTo("sensorId", sensorId);
+
+            if (bucket != null) {
+                long[] bucketStarts = new long[(int) ((to - from + bucket - 1) / bucket)];
+                for (int i = 0; i < bucketStarts.length; i++) {
+                    bucketStarts[i] = from + i * bucket;
+                }
+                BucketAggregator aggregator = new BucketAggregator(bucketStarts, to);
+                aggregateReadings(query, from, to, List.of(field), new BucketAggregator[]{aggregator});
+
+                List<FilterResponse> result = new ArrayList<>(aggregator.size());
+                for (int i = 0; i < aggregator.size(); i++) {
+                    result.add(new FilterResponse(String.valueOf(aggregator.getStart(i)), aggregator.getMean(i),
+                        aggregator.getMin(i), aggregator.getMax(i), aggregator.getCount(i), aggregator.getStddev(i)));
+                }
+                return result;
             }
 
+            SeriesBuffer series = readSeries(query, field, from, to);
+            int[] selected = Lttb.downsample(series.timestamps, series.values, series.size, maxPoints);
+            List<FilterResponse> result = new ArrayList<>(selected.length);
+            for (int index : selected) {
+                double value = series.values[index];
+                result.add(new FilterResponse(String.valueOf(series.timestamps[index]), value, value, value, 1, 0));
+            }
             return result;
 
         } catch (InterruptedException e) {
@@ -861,4 +1060,231 @@ public class SensorService {
         }
     }
 
+    /**
+     * Aggregates the readings of a {@code user_sensor} query over {@code [from, to)} into the aggregators of the fields.
+     *
+     * <p>Long ranges are split on bucket boundaries into sub-ranges of at least an hour, which are scanned
+     * concurrently on the chart executor into partial aggregators and merged once all of them are done.</p>
+     *
+     * @param query the query, without timestamp range or ordering
+     * @param from the start of the range, inside the buckets of the aggregators
+     * @param to the end of the range, inside the buckets of the aggregators or at their end
+     * @param aggregators one aggregator per field, all with the same buckets
+     */
+    private void aggregateReadings(Query query, long from, long to, List<String> fields, BucketAggregator[] aggregators)
+            throws InterruptedException, ExecutionException {
+        int first = aggregators[0].bucketOf(from);
+        int buckets = aggregators[0].bucketOf(to - 1) - first + 1;
+        int subRanges = (int) Math.min(Math.min(buckets, MAX_CHART_SUB_RANGES), (to - from) / MIN_CHART_SUB_RANGE_SECONDS);
+        if (subRanges <= 1) {
+            scanSubRange(query, from, to, fields, aggregators);
+            return;
+        }
+
+        List<Callable<BucketAggregator[]>> tasks = new ArrayList<>(subRanges);
+        for (int r = 0; r < subRanges; r++) {
+            int firstBucket = first + (int) ((long) r * buckets / subRanges);
+            int nextBucket = first + (int) ((long) (r + 1) * buckets / subRanges);
+            long subFrom = r == 0 ? from : aggregators[0].getStart(firstBucket);
+            long subTo = r == subRanges - 1 ? to : aggregators[0].getStart(nextBucket);
+
+            tasks.add(() -> {
+                BucketAggregator[] partial = new BucketAggregator[aggregators.length];
+                for (int f = 0; f < partial.length; f++) {
+                    partial[f] = aggregators[f].emptyCopy();
+                }
+                scanSubRange(query, subFrom, subTo, fields, partial);
+                return partial;
+            });
+        }
+
+        for (Future<BucketAggregator[]> future : chartExecutor.invokeAll(tasks)) {
+            BucketAggregator[] partial = future.get();
+            for (int f = 0; f < aggregators.length; f++) {
+                aggregators[f].merge(partial[f]);
+            }
+        }
+    }
+
+    /**
+     * Reads the raw series of a field over {@code [from, to)}. Long ranges are split into sub-ranges of at least
+     * an hour, scanned concurrently on the chart executor and concatenated in order.
+     *
+     * @throws BadRequestException if the range holds more than {@code chart.range.max-readings} readings;
+     *                             scanning stops as soon as the limit is passed
+     */
+    private SeriesBuffer readSeries(Query query, String field, long from, long to)
+            throws InterruptedException, ExecutionException {
+        int subRanges = (int) Math.max(1, Math.min(MAX_CHART_SUB_RANGES, (to - from) / MIN_CHART_SUB_RANGE_SECONDS));
+        AtomicLong scanned = new AtomicLong();
+
+        List<Callable<SeriesBuffer>> tasks = new ArrayList<>(subRanges);
+        for (int r = 0; r < subRanges; r++) {
+            long subFrom = from + (to - from) * r / subRanges;
+            long subTo = r == subRanges - 1 ? to : from + (to - from) * (r + 1) / subRanges;
+
+            tasks.add(() -> {
+                SeriesBuffer partial = new SeriesBuffer();
+                scanReadings(inRange(query, subFrom, subTo), List.of(field), doc -> {
+                    if (scanned.incrementAndGet() > maxRangeReadings) {
+                        throw new BadRequestException("Range holds more than " + maxRangeReadings
+                            + " readings, use a shorter range or bucket instead of maxPoints");
+                    }
+                    Long timestamp = doc.getLong("timestamp");
+                    Double value = doc.getDouble(field);
+                    if (timestamp != null && value != null) partial.add(timestamp, value);
+                });
+                return partial;
+            });
+        }
+
+        SeriesBuffer series = new SeriesBuffer();
+        for (Future<SeriesBuffer> future : chartExecutor.invokeAll(tasks)) {
+            try {
+                series.addAll(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof BadRequestException tooLarge) {
+                    throw tooLarge;
+                }
+                throw e;
+            }
+        }
+        return series;
+    }
+
+    private void scanSubRange(Query query, long from, long to, List<String> fields, BucketAggregator[] aggregators)
+            throws InterruptedException, ExecutionException {
+        scanReadings(inRange(query, from, to), fields, doc -> {
+            Long timestamp = doc.getLong("timestamp");
+            if (timestamp == null) return;
+
+            int bucket = aggregators[0].bucketOf(timestamp);
+            if (bucket < 0) return;
+
+            for (int f = 0; f < aggregators.length; f++) {
+                Double value = doc.getDouble(fields.get(f));
+                if (value != null) aggregators[f].add(bucket, value);
+            }
+        });
+    }
+
+    private static Query inRange(Query query, long from, long to) {
+        return query
+            .whereGreaterThanOrEqualTo("timestamp", from)
+            .whereLessThan("timestamp", to)
+            .orderBy("timestamp");
+    }
+
+    /**
+     * Reads the results of an ordered {@code user_sensor} query page by page, projected to the timestamp and the
+     * given fields, and hands every document to a consumer. At most one page is held in memory at a time.
+     */
+    private void scanReadings(Query query, List<String> fields, Consumer<QueryDocumentSnapshot> consumer)
+            throws InterruptedException, ExecutionException {
+        String[] projection = new String[fields.size() + 1];
+        projection[0] = "timestamp";
+        for (int i = 0; i < fields.size(); i++) {
+            projection[i + 1] = fields.get(i);
+        }
+
+        Query page = query.select(projection).limit(chartPageSize);
+        while (true) {
+            List<QueryDocumentSnapshot> docs = page.get().get().getDocuments();
+            docs.forEach(consumer);
+            if (docs.size() < chartPageSize) {
+                return;
+            }
+            page = query.select(projection).startAfter(docs.get(docs.size() - 1)).limit(chartPageSize);
+        }
+    }
+
+    /**
+     * Growable primitive arrays holding a raw time series.
+     */
+    private static final class SeriesBuffer {
+        private long[] timestamps = new long[1024];
+        private double[] values = new double[1024];
+        private int size;
+
+        private void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        private void addAll(SeriesBuffer other) {
+            if (size + other.size > timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size + other.size);
+                values = Arrays.copyOf(values, size + other.size);
+            }
+            System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * Feeds the rollups of the sensor into the aggregators of the fields, one rollup per aggregator bucket.
+     *
+     * <p>A rollup only counts if it covers its bucket from the start; buckets without one (e.g. they predate the
+     * rollups) must be read entirely from the raw readings, and buckets whose rollup stops early (e.g. the current
+     * one) from where the rollup stops.</p>
+     *
+     * @return for each bucket, the epoch second from which its raw readings must still be aggregated,
+     *         the end of the bucket if the rollup covers all of it
+     */
+    private long[] aggregateRollups(String sensorId, List<String> fields, SensorRollupService.Resolution resolution,
+                                    BucketAggregator[] aggregators) throws InterruptedException, ExecutionException {
+        List<Long> buckets = new ArrayList<>(aggregators[0].size());
+        for (int i = 0; i < aggregators[0].size(); i++) {
+            buckets.add(aggregators[0].getStart(i));
+        }
+
+        Map<Long, SensorRollupService.Rollup> rollups = sensorRollupService.getRollups(sensorId, resolution, buckets);
+        long[] rawFrom = new long[buckets.size()];
+        for (int i = 0; i < buckets.size(); i++) {
+            SensorRollupService.Rollup rollup = rollups.get(buckets.get(i));
+            if (rollup == null || rollup.getFrom() > buckets.get(i)) {
+                rawFrom[i] = buckets.get(i);
+                continue;
+            }
+            rawFrom[i] = Math.min(rollup.getThrough(), aggregators[0].getEnd(i));
+
+            for (int f = 0; f < aggregators.length; f++) {
+                int fieldIndex = SensorRollupService.FIELDS.indexOf(fields.get(f));
+                aggregators[f].add(i, rollup.getCount(fieldIndex), rollup.getSum(fieldIndex),
+                    rollup.getMin(fieldIndex), rollup.getMax(fieldIndex), rollup.getSumSq(fieldIndex));
+            }
+        }
+        return rawFrom;
+    }
+
+    /**
+     * Aggregates the raw readings of the parts of the buckets not covered by rollups. Consecutive uncovered parts
+     * are read as one range.
+     *
+     * @param rawFrom for each bucket, the epoch second from which its raw readings must be aggregated
+     */
+    private void aggregateUncovered(Query query, long[] rawFrom, List<String> fields, BucketAggregator[] aggregators)
+            throws InterruptedException, ExecutionException {
+        BucketAggregator buckets = aggregators[0];
+        int i = 0;
+        while (i < rawFrom.length) {
+            if (rawFrom[i] >= buckets.getEnd(i)) {
+                i++;
+                continue;
+            }
+            long from = rawFrom[i];
+            int last = i;
+            while (last + 1 < rawFrom.length && rawFrom[last + 1] == buckets.getStart(last + 1)) {
+                last++;
+            }
+            aggregateReadings(query, from, buckets.getEnd(last), fields, aggregators);
+            i = last + 1;
+        }
+    }
 }
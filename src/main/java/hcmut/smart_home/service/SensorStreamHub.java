@@ -0,0 +1,243 @@
+package hcmut.smart_home.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-process publish/subscribe hub for Realtime Database paths.
+ *
+ * <p>Each path (for example {@code data/{sensorId}} or {@code control/{sensorId}}) is backed by a single
+ * reference-counted {@link ValueEventListener}: it is attached when the first subscriber arrives and removed
+ * from the same reference when the last one leaves. Every snapshot is converted once and the resulting value
+ * is shared with all subscribers of the path.</p>
+ *
+ * <p>The hub publishes the number of attached database listeners and the subscribers per path, and
+ * periodically sweeps for subscriptions whose owner is gone but never unsubscribed.</p>
+ */
+@Service
+public class SensorStreamHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorStreamHub.class);
+    private static final BooleanSupplier ALWAYS_ALIVE = () -> true;
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+
+    private final FirebaseDatabase firebaseDatabase;
+    private final MeterRegistry meterRegistry;
+    private final Counter leakedSubscriptions;
+
+    public SensorStreamHub(FirebaseDatabase firebaseDatabase, MeterRegistry meterRegistry) {
+        this.firebaseDatabase = firebaseDatabase;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("sensor.stream.listeners", streams, Map::size)
+            .description("Realtime Database listeners attached by the stream hub")
+            .register(meterRegistry);
+        this.leakedSubscriptions = Counter.builder("sensor.stream.leaked.subscriptions")
+            .description("Subscriptions released by the leak detector because their owner was gone")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Receives the values published on a path.
+     */
+    public interface StreamListener {
+        /**
+         * Called with the converted value of every existing snapshot of the path.
+         * The value is shared between subscribers and must not be modified.
+         */
+        void onValue(Object value);
+
+        default void onError(DatabaseError error) {}
+    }
+
+    /**
+     * Handle returned by {@link #subscribe(String, StreamListener)}. Closing it more than once is a no-op.
+     */
+    public final class Subscription implements AutoCloseable {
+        private final Stream stream;
+        private final StreamListener listener;
+        private final BooleanSupplier ownerAlive;
+        private final AtomicBoolean active = new AtomicBoolean(true);
+
+        private Subscription(Stream stream, StreamListener listener, BooleanSupplier ownerAlive) {
+            this.stream = stream;
+            this.listener = listener;
+            this.ownerAlive = ownerAlive;
+        }
+
+        public String getPath() {
+            return stream.path;
+        }
+
+        public boolean isActive() {
+            return active.get();
+        }
+
+        public void unsubscribe() {
+            if (active.compareAndSet(true, false)) {
+                release(this);
+            }
+        }
+
+        @Override
+        public void close() {
+            unsubscribe();
+        }
+    }
+
+    /**
+     * Subscribes to a path for the lifetime of the application, see {@link #subscribe(String, StreamListener, BooleanSupplier)}.
+     */
+    public Subscription subscribe(String path, StreamListener listener) {
+        return subscribe(path, listener, ALWAYS_ALIVE);
+    }
+
+    /**
+     * Subscribes to a path, attaching the underlying database listener if this is the first subscriber.
+     * If the path already has a value, it is replayed to the new subscriber immediately.
+     *
+     * @param path the Realtime Database path, e.g. {@code data/{sensorId}}
+     * @param listener the listener to notify
+     * @param ownerAlive reports whether the owner of the subscription still exists; once it returns
+     *                   {@code false} the leak detector releases the subscription
+     * @return the subscription handle used to unsubscribe
+     */
+    public Subscription subscribe(String path, StreamListener listener, BooleanSupplier ownerAlive) {
+        Stream stream;
+        Subscription subscription;
+
+        synchronized (streams) {
+            stream = streams.get(path);
+            if (stream == null) {
+                stream = new Stream(path, firebaseDatabase.getReference(path));
+                stream.subscriberGauge = Gauge.builder("sensor.stream.subscribers", stream.subscriptions, List::size)
+                    .description("Subscribers of a Realtime Database path")
+                    .tag("path", path)
+                    .register(meterRegistry);
+                streams.put(path, stream);
+                stream.reference.addValueEventListener(stream);
+                logger.info("Attached stream listener to path: {}", path);
+            }
+            subscription = new Subscription(stream, listener, ownerAlive);
+            stream.subscriptions.add(subscription);
+        }
+
+        stream.replay(subscription);
+        return subscription;
+    }
+
+    /**
+     * Releases subscriptions whose owner is gone and detaches listeners that have no subscribers left.
+     */
+    @Scheduled(fixedDelayString = "${sensor.stream.leak-check-interval-ms:60000}")
+    public void detectLeaks() {
+        List<Subscription> leaked = new ArrayList<>();
+        for (Stream stream : streams.values()) {
+            for (Subscription subscription : stream.subscriptions) {
+                if (!subscription.ownerAlive.getAsBoolean()) {
+                    leaked.add(subscription);
+                }
+            }
+        }
+
+        for (Subscription subscription : leaked) {
+            if (subscription.isActive()) {
+                logger.warn("Releasing leaked subscription on path: {}", subscription.getPath());
+                leakedSubscriptions.increment();
+                subscription.unsubscribe();
+            }
+        }
+
+        synchronized (streams) {
+            List<Stream> idle = streams.values().stream().filter(stream -> stream.subscriptions.isEmpty()).toList();
+            idle.forEach(this::detach);
+        }
+    }
+
+    private void release(Subscription subscription) {
+        Stream stream = subscription.stream;
+        synchronized (streams) {
+            stream.subscriptions.remove(subscription);
+            if (stream.subscriptions.isEmpty() && streams.get(stream.path) == stream) {
+                detach(stream);
+            }
+        }
+    }
+
+    private void detach(Stream stream) {
+        streams.remove(stream.path);
+        stream.reference.removeEventListener(stream);
+        meterRegistry.remove(stream.subscriberGauge);
+        logger.info("Detached stream listener from path: {}", stream.path);
+    }
+
+    private static final class Stream implements ValueEventListener {
+        private final String path;
+        private final DatabaseReference reference;
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        private Gauge subscriberGauge;
+        private Object lastValue;
+
+        private Stream(String path, DatabaseReference reference) {
+            this.path = path;
+            this.reference = reference;
+        }
+
+        @Override
+        public synchronized void onDataChange(DataSnapshot snapshot) {
+            if (!snapshot.exists()) {
+                return;
+            }
+
+            lastValue = snapshot.getValue();
+            for (Subscription subscription : subscriptions) {
+                deliver(subscription, lastValue);
+            }
+        }
+
+        @Override
+        public void onCancelled(DatabaseError error) {
+            logger.error("Error listening to path {}: {}", path, error.getMessage());
+            for (Subscription subscription : subscriptions) {
+                subscription.listener.onError(error);
+            }
+        }
+
+        private synchronized void replay(Subscription subscription) {
+            if (lastValue != null) {
+                deliver(subscription, lastValue);
+            }
+        }
+
+        private void deliver(Subscription subscription, Object value) {
+            if (!subscription.isActive()) {
+                return;
+            }
+            try {
+                subscription.listener.onValue(value);
+            } catch (RuntimeException e) {
+                logger.error("Stream subscriber on path {} failed: ", path, e);
+            }
+        }
+    }
+}
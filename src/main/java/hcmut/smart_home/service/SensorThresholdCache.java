@@ -0,0 +1,98 @@
+package hcmut.smart_home.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+
+import hcmut.smart_home.dto.sensor.SensorInfoResponse;
+
+/**
+ * In-memory view of the thresholds stored in the "sensors" collection.
+ *
+ * <p>The cache is kept current by a Firestore snapshot listener, and writers on this server
+ * ({@link SensorService}) push their changes directly so threshold evaluation never waits
+ * for the listener round trip.</p>
+ */
+@Service
+public class SensorThresholdCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorThresholdCache.class);
+    private final Map<String, SensorInfoResponse> thresholds = new ConcurrentHashMap<>();
+
+    private final Firestore firestore;
+    private ListenerRegistration registration;
+
+    public SensorThresholdCache(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @PostConstruct
+    public void startListening() {
+        registration = firestore.collection("sensors").addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                logger.error("Error while listening to sensor thresholds: {}", error.getMessage());
+                return;
+            }
+            if (snapshot == null) {
+                return;
+            }
+
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                QueryDocumentSnapshot doc = change.getDocument();
+                switch (change.getType()) {
+                    case ADDED, MODIFIED -> load(doc);
+                    case REMOVED -> thresholds.remove(doc.getId());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stopListening() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    /**
+     * Returns the cached thresholds of a sensor.
+     *
+     * @param sensorId the ID of the sensor
+     * @return the cached {@link SensorInfoResponse}, or {@code null} if the sensor is unknown
+     */
+    public SensorInfoResponse get(String sensorId) {
+        return thresholds.get(sensorId);
+    }
+
+    /**
+     * Replaces the cached thresholds of a sensor after a local write.
+     *
+     * @param sensorId the ID of the sensor
+     * @param sensorInfo the thresholds that were written to Firestore
+     */
+    public void put(String sensorId, SensorInfoResponse sensorInfo) {
+        thresholds.put(sensorId, sensorInfo);
+    }
+
+    private void load(QueryDocumentSnapshot doc) {
+        try {
+            thresholds.put(doc.getId(), new SensorInfoResponse(doc.getData()));
+        } catch (RuntimeException e) {
+            // Incomplete documents (e.g. missing threshold fields) are ignored until they are fixed
+            thresholds.remove(doc.getId());
+            logger.warn("Ignoring thresholds of sensor {}: {}", doc.getId(), e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package hcmut.smart_home.service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -51,14 +52,16 @@ public class UserService {
     private final NotificationService notificationService;
     private final SensorDataService sensorDataService;
     private final FaceEmbeddingService faceEmbeddingService;
+    private final FaceEmbeddingIndex faceEmbeddingIndex;
 
-    public UserService(Firestore firestore, Jwt jwt, CloudinaryUtil cloudinaryUtil, NotificationService notificationService, SensorDataService sensorDataService, FaceEmbeddingService faceEmbeddingService) {
+    public UserService(Firestore firestore, Jwt jwt, CloudinaryUtil cloudinaryUtil, NotificationService notificationService, SensorDataService sensorDataService, FaceEmbeddingService faceEmbeddingService, FaceEmbeddingIndex faceEmbeddingIndex) {
         this.firestore = firestore;
         this.jwt = jwt;
         this.cloudinaryUtil = cloudinaryUtil;
         this.notificationService = notificationService;
         this.sensorDataService = sensorDataService;
         this.faceEmbeddingService = faceEmbeddingService;
+        this.faceEmbeddingIndex = faceEmbeddingIndex;
     }
 
     /**
@@ -168,44 +171,46 @@ public class UserService {
     /**
      * Authenticates a user using Face ID embedding.
      * <p>
-     * This method compares the provided face embedding with all stored embeddings in the "face-ids" Firestore collection.
+     * Without an identifier, this method compares the provided face embedding with all stored embeddings of the
+     * "face-ids" Firestore collection, held in memory by {@link FaceEmbeddingIndex} (identification, 1:N).
+     * With an identifier, it only compares the embedding with the stored embedding of that user (verification, 1:1),
+     * which takes constant time whatever the number of enrolled users and cannot match anyone else.
      * If a match is found within a specified threshold, the corresponding user is authenticated and JWT tokens are generated.
      * </p>
      *
-     * @param faceId The {@link FaceEmbedding} containing the user's face embedding to authenticate.
+     * @param image The image containing the user's face to authenticate.
+     * @param identifier The email or ID of the user claiming the face, or {@code null} to search all users.
      * @return {@link AuthResponse} containing user information and authentication tokens if authentication is successful.
      * @throws UnauthorizedException If no matching face embedding is found or the user does not exist.
      * @throws InternalServerErrorException If an internal error occurs during authentication.
      */
-    public AuthResponse loginWithFaceId(MultipartFile image) {
+    public AuthResponse loginWithFaceId(MultipartFile image, String identifier) {
         try {
-            // Get the face embedding from the provided image
+            // Get the face embedding from the provided image. This comes first even with an identifier, so unknown
+            // identifiers take as long as known ones and response times do not reveal which identifiers exist
             FaceEmbedding faceId = faceEmbeddingService.getEmbedding(image);
             List<Double> inputEmbedded = faceId.getEmbedding();
 
-            // Get all face IDs from Firestore
-            ApiFuture<QuerySnapshot> future = firestore.collection("face-ids").get();
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+            // Resolve the claimed user, if any
+            DocumentSnapshot userDoc = null;
+            if (identifier != null && !identifier.isBlank()) {
+                userDoc = findUserByIdentifier(identifier.trim());
+                if (userDoc == null) {
+                    // Same message as a failed match, not to reveal which identifiers exist
+                    throw new UnauthorizedException("Face ID verification failed" + String.format(" maxSimilarity: %.2f", 0.0));
+                }
+            }
+
+            // Compare with the claimed user's face, or find the closest enrolled face in the in-memory index
+            FaceEmbeddingIndex.Match match = userDoc != null
+                ? faceEmbeddingIndex.verify(userDoc.getId(), inputEmbedded)
+                : faceEmbeddingIndex.findBestMatch(inputEmbedded);
 
             String matchedUserId = null;
             double maxSimilarity = 0.0;
-
-            for (QueryDocumentSnapshot doc : documents) {
-                List<?> embeddingRaw = (List<?>) doc.get("embedding");
-                if (embeddingRaw == null || embeddingRaw.size() != inputEmbedded.size()) continue;
-
-                List<Double> storedEmbedding = embeddingRaw.stream()
-                        .map(o -> o instanceof Number ? ((Number) o).doubleValue() : null)
-                        .toList();
-
-                FaceEmbedding storedFace = new FaceEmbedding();
-                storedFace.setEmbedding(storedEmbedding);
-
-                double similarity = faceEmbeddingService.calculateSimilarity(inputEmbedded, storedFace.getEmbedding());
-                if (similarity > maxSimilarity && similarity >= faceEmbeddingService.getThreshold()) {
-                    maxSimilarity = similarity;
-                    matchedUserId = doc.getId();
-                }
+            if (match != null && faceEmbeddingService.isMatch(match.similarity())) {
+                matchedUserId = match.userId();
+                maxSimilarity = match.similarity();
             }
 
             if (matchedUserId == null) {
@@ -213,7 +218,9 @@ public class UserService {
             }
 
             // Check if the user exists in the "users" collection
-            DocumentSnapshot userDoc = firestore.collection("users").document(matchedUserId).get().get();
+            if (userDoc == null) {
+                userDoc = firestore.collection("users").document(matchedUserId).get().get();
+            }
             if (!userDoc.exists()) {
                 throw new UnauthorizedException("Face ID verification failed" + String.format(" maxSimilarity: %.2f", maxSimilarity));
             }
@@ -242,6 +249,43 @@ public class UserService {
         }
     }
 
+    /**
+     * Finds a user by email, or by ID if the identifier is not an email.
+     *
+     * @param identifier the email or ID of the user
+     * @return the user document, or {@code null} if no user matches, including identifiers that are not valid
+     *         document IDs
+     */
+    private DocumentSnapshot findUserByIdentifier(String identifier) throws InterruptedException, ExecutionException {
+        CollectionReference usersCollection = firestore.collection("users");
+        if (identifier.contains("@")) {
+            List<QueryDocumentSnapshot> documents = usersCollection.whereEqualTo("email", identifier).limit(1).get().get().getDocuments();
+            return documents.isEmpty() ? null : documents.get(0);
+        }
+        if (!isValidDocumentId(identifier)) {
+            return null;
+        }
+
+        try {
+            DocumentSnapshot userDoc = usersCollection.document(identifier).get().get();
+            return userDoc.exists() ? userDoc : null;
+        } catch (IllegalArgumentException e) {
+            return null; // Rejected by Firestore as a document ID
+        }
+    }
+
+    /**
+     * Checks an identifier against the Firestore document ID constraints: not empty, no '/', not "." or "..",
+     * not of the reserved form "__.*__", and at most 1500 bytes in UTF-8.
+     */
+    private static boolean isValidDocumentId(String id) {
+        return !id.isEmpty()
+            && !id.contains("/")
+            && !id.equals(".") && !id.equals("..")
+            && !(id.length() >= 4 && id.startsWith("__") && id.endsWith("__"))
+            && id.getBytes(StandardCharsets.UTF_8).length <= 1500;
+    }
+
     /**
      * Refreshes the access token using the provided refresh token.
      *
@@ -300,11 +344,12 @@ public class UserService {
 
             // Use batch to write face embedding and update user enrollment status atomically
             WriteBatch batch = firestore.batch();
-            batch.set(faceIdDocRef, faceId);
+            batch.set(faceIdDocRef, faceEmbeddingService.toDocument(faceId.getEmbedding()));
             batch.update(docRef, "isEnrolledFaceId", true);
 
             // Commit the batch operation
             batch.commit().get();
+            faceEmbeddingIndex.put(userId, faceId.getEmbedding());
 
             return new SingleResponse("Face ID enrolled successfully");
 
@@ -356,6 +401,7 @@ public class UserService {
             batch.delete(faceIdDocRef);
             batch.update(userDocRef, "isEnrolledFaceId", false);
             batch.commit().get();
+            faceEmbeddingIndex.remove(userId);
 
             return new SingleResponse("Face ID deleted successfully");
         } catch (ExecutionException e) {
@@ -543,12 +589,15 @@ public class UserService {
      * Retrieves the list of notifications for a specific user based on their subscribed sensor.
      *
      * @param userId The ID of the user whose notifications are to be retrieved.
-     * @return A list of {@link NotificationResponse} objects containing the user's notifications.
+     * @param page The page number, used only when no cursor is given.
+     * @param limit The maximum number of notifications per page.
+     * @param cursor The {@code nextCursor} returned with the previous page, or {@code null} for the first page.
+     * @return A page of {@link NotificationResponse} objects containing the user's notifications.
      * @throws NotFoundException If the user or the associated sensor is not found.
      * @throws BadRequestException If the user has not subscribed to any sensor.
      * @throws InternalServerErrorException If an error occurs while fetching data from Firestore.
      */
-    public PaginationResponse<NotificationResponse> getUserNotifications(String userId, Integer page, Integer limit) {
+    public PaginationResponse<NotificationResponse> getUserNotifications(String userId, Integer page, Integer limit, String cursor) {
         try {
             // Get reference to the user document in Firestore
             DocumentReference docRef = firestore.collection("users").document(userId);
@@ -574,7 +623,10 @@ public class UserService {
 
             int _page = page != null ? page : 1;
             int _limit = limit != null ? limit : 10;
-            return notificationService.getNotifications(sensorId, _page, _limit);
+            if (_page < 1 || _limit < 1) {
+                throw new BadRequestException("Page and limit must be positive");
+            }
+            return notificationService.getNotifications(sensorId, _page, _limit, cursor);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new InternalServerErrorException();
@@ -0,0 +1,153 @@
+package hcmut.smart_home.util;
+
+import java.util.Arrays;
+
+/**
+ * Streaming aggregation of timestamped values into consecutive time buckets.
+ *
+ * <p>Buckets are described by their sorted start times; bucket {@code i} covers {@code [starts[i], starts[i + 1])}
+ * and the last bucket ends at the given end. Count, sum, min, max and sum of squares are kept in primitive arrays
+ * indexed by bucket, so values are added without boxing or per-value allocation. Aggregators with the same buckets
+ * can be merged in any order.</p>
+ */
+public class BucketAggregator {
+    private final long[] starts;
+    private final long end;
+    private final long[] count;
+    private final double[] sum;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sumSq;
+
+    /**
+     * @param starts the sorted start of each bucket, in epoch seconds
+     * @param end the exclusive end of the last bucket, in epoch seconds
+     */
+    public BucketAggregator(long[] starts, long end) {
+        this.starts = starts;
+        this.end = end;
+        this.count = new long[starts.length];
+        this.sum = new double[starts.length];
+        this.min = new double[starts.length];
+        this.max = new double[starts.length];
+        this.sumSq = new double[starts.length];
+    }
+
+    /**
+     * Creates an empty aggregator with the same buckets.
+     */
+    public BucketAggregator emptyCopy() {
+        return new BucketAggregator(starts, end);
+    }
+
+    /**
+     * Returns the bucket containing a timestamp, or -1 if it is outside all buckets.
+     */
+    public int bucketOf(long timestamp) {
+        if (starts.length == 0 || timestamp < starts[0] || timestamp >= end) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(starts, timestamp);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Adds a value to the bucket containing its timestamp.
+     *
+     * @return {@code false} if the timestamp is outside all buckets and the value was ignored
+     */
+    public boolean add(long timestamp, double value) {
+        int bucket = bucketOf(timestamp);
+        if (bucket < 0) {
+            return false;
+        }
+        add(bucket, value);
+        return true;
+    }
+
+    public void add(int bucket, double value) {
+        if (count[bucket] == 0 || value < min[bucket]) min[bucket] = value;
+        if (count[bucket] == 0 || value > max[bucket]) max[bucket] = value;
+        count[bucket]++;
+        sum[bucket] += value;
+        sumSq[bucket] += value * value;
+    }
+
+    /**
+     * Adds values that were already aggregated elsewhere (e.g. a stored rollup) to a bucket.
+     * A {@link Double#NaN} sum of squares marks it as unknown, and so the standard deviation of the bucket.
+     */
+    public void add(int bucket, long count, double sum, double min, double max, double sumSq) {
+        if (count == 0) {
+            return;
+        }
+        if (this.count[bucket] == 0 || min < this.min[bucket]) this.min[bucket] = min;
+        if (this.count[bucket] == 0 || max > this.max[bucket]) this.max[bucket] = max;
+        this.count[bucket] += count;
+        this.sum[bucket] += sum;
+        this.sumSq[bucket] += sumSq;
+    }
+
+    /**
+     * Adds all values of another aggregator with the same buckets.
+     */
+    public void merge(BucketAggregator other) {
+        if (other.starts.length != starts.length) {
+            throw new IllegalArgumentException("Aggregators have different buckets");
+        }
+        for (int i = 0; i < starts.length; i++) {
+            add(i, other.count[i], other.sum[i], other.min[i], other.max[i], other.sumSq[i]);
+        }
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public long getStart(int bucket) {
+        return starts[bucket];
+    }
+
+    /**
+     * Returns the exclusive end of a bucket, the start of the next one.
+     */
+    public long getEnd(int bucket) {
+        return bucket + 1 < starts.length ? starts[bucket + 1] : end;
+    }
+
+    public long getCount(int bucket) {
+        return count[bucket];
+    }
+
+    public double getSum(int bucket) {
+        return sum[bucket];
+    }
+
+    public double getMin(int bucket) {
+        return count[bucket] == 0 ? 0.0 : min[bucket];
+    }
+
+    public double getMax(int bucket) {
+        return count[bucket] == 0 ? 0.0 : max[bucket];
+    }
+
+    public double getMean(int bucket) {
+        return count[bucket] == 0 ? 0.0 : sum[bucket] / count[bucket];
+    }
+
+    /**
+     * Returns the population standard deviation of a bucket, or {@link Double#NaN} if the sum of squares of some of
+     * its values is unknown.
+     */
+    public double getStddev(int bucket) {
+        if (count[bucket] == 0) {
+            return 0.0;
+        }
+        if (Double.isNaN(sumSq[bucket])) {
+            return Double.NaN;
+        }
+        double mean = sum[bucket] / count[bucket];
+        double variance = sumSq[bucket] / count[bucket] - mean * mean;
+        return variance > 0 ? Math.sqrt(variance) : 0.0;
+    }
+}
@@ -0,0 +1,69 @@
+package hcmut.smart_home.util;
+
+/**
+ * Minimal circuit breaker guarding calls to a remote dependency.
+ *
+ * <p>The circuit opens after {@code failureThreshold} consecutive failures and rejects calls for
+ * {@code openDurationMs}. It then lets a single trial call through (half-open): a success closes the circuit,
+ * a failure opens it again.</p>
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        if (failureThreshold < 1 || openDurationMs < 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive and openDurationMs not negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * Whether a call may proceed. Every permitted call must be followed by {@link #recordSuccess()} or
+     * {@link #recordFailure()}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialInFlight) {
+                    yield false;
+                }
+                trialInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,137 @@
+package hcmut.smart_home.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.cloud.firestore.Blob;
+
+/**
+ * Packs face embeddings into compact Firestore {@link Blob}s.
+ *
+ * <p>A packed embedding starts with a one-byte format tag, followed by:</p>
+ * <ul>
+ *   <li>{@link Format#FLOAT32}: the values as little-endian 32-bit floats (4 bytes per dimension);</li>
+ *   <li>{@link Format#INT8}: a little-endian 32-bit float scale, then each value divided by the scale and rounded
+ *       to a signed byte (1 byte per dimension).</li>
+ * </ul>
+ *
+ * <p>Embeddings written before the packed format are arrays of doubles, which {@link #decode(Object)} still reads.</p>
+ */
+public class EmbeddingCodec {
+
+    public enum Format {
+        FLOAT32((byte) 1), INT8((byte) 2);
+
+        private final byte tag;
+
+        Format(byte tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * Parses a format name, case-insensitively.
+         */
+        public static Format of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private EmbeddingCodec() {}
+
+    /**
+     * Packs an embedding.
+     *
+     * @param embedding the embedding values
+     * @param format the packed format
+     * @return the packed embedding
+     */
+    public static Blob encode(List<Double> embedding, Format format) {
+        float[] values = new float[embedding.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = embedding.get(i).floatValue();
+        }
+        return encode(values, format);
+    }
+
+    /**
+     * Packs an embedding.
+     *
+     * @param embedding the embedding values
+     * @param format the packed format
+     * @return the packed embedding
+     */
+    public static Blob encode(float[] embedding, Format format) {
+        ByteBuffer buffer;
+        if (format == Format.FLOAT32) {
+            buffer = allocate(1 + 4 * embedding.length).put(format.tag);
+            for (float value : embedding) {
+                buffer.putFloat(value);
+            }
+        } else {
+            float maxAbs = 0f;
+            for (float value : embedding) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+            float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+
+            buffer = allocate(1 + 4 + embedding.length).put(format.tag).putFloat(scale);
+            for (float value : embedding) {
+                buffer.put((byte) Math.round(value / scale));
+            }
+        }
+        return Blob.fromBytes(buffer.array());
+    }
+
+    /**
+     * Reads a stored embedding, either packed or a legacy array of numbers.
+     *
+     * @param stored the value of the "embedding" field
+     * @return the embedding values, or {@code null} if the value is not a valid embedding
+     */
+    public static float[] decode(Object stored) {
+        if (stored instanceof Blob blob) {
+            return decode(blob.toBytes());
+        }
+        if (!(stored instanceof List<?> values)) {
+            return null;
+        }
+
+        float[] embedding = new float[values.size()];
+        for (int i = 0; i < embedding.length; i++) {
+            if (!(values.get(i) instanceof Number number)) {
+                return null;
+            }
+            embedding[i] = number.floatValue();
+        }
+        return embedding;
+    }
+
+    private static float[] decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte tag = buffer.get();
+        if (tag == Format.FLOAT32.tag && buffer.remaining() % 4 == 0) {
+            float[] embedding = new float[buffer.remaining() / 4];
+            buffer.asFloatBuffer().get(embedding);
+            return embedding;
+        }
+        if (tag == Format.INT8.tag && buffer.remaining() >= 4) {
+            float scale = buffer.getFloat();
+            float[] embedding = new float[buffer.remaining()];
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = buffer.get() * scale;
+            }
+            return embedding;
+        }
+        return null;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,124 @@
+package hcmut.smart_home.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Reads and applies the EXIF orientation of JPEG images.
+ *
+ * <p>Phones store photos in sensor orientation and record the rotation to display them in the EXIF
+ * "Orientation" tag. {@code ImageIO} ignores the tag, so an image re-encoded without its metadata must have the
+ * rotation applied to its pixels first.</p>
+ */
+public class ExifOrientation {
+
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ExifOrientation() {}
+
+    /**
+     * Reads the EXIF orientation of a JPEG image.
+     *
+     * @param jpeg the encoded image
+     * @return the orientation, from 1 (upright) to 8, or 1 if the image is not a JPEG or has no orientation
+     */
+    public static int read(byte[] jpeg) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xff) != 0xff || (jpeg[1] & 0xff) != 0xd8) {
+            return 1;
+        }
+
+        int i = 2;
+        while (i + 4 <= jpeg.length && (jpeg[i] & 0xff) == 0xff) {
+            int marker = jpeg[i + 1] & 0xff;
+            if (marker == 0xda || marker == 0xd9) {
+                break; // Start of scan or end of image: no more metadata
+            }
+            int length = readShort(jpeg, i + 2, false);
+            if (marker == 0xe1 && length >= 8 && i + 10 <= jpeg.length && isExifHeader(jpeg, i + 4)) {
+                return readOrientation(jpeg, i + 10, Math.min(jpeg.length, i + 2 + length));
+            }
+            i += 2 + length;
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the image as it should be displayed for the given orientation.
+     */
+    public static BufferedImage apply(BufferedImage image, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = orientation >= 5;
+        BufferedImage result = new BufferedImage(swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_RGB);
+        int[] source = image.getRGB(0, 0, width, height, null, 0, width);
+        int[] target = new int[source.length];
+        int targetWidth = result.getWidth();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int tx, ty;
+                switch (orientation) {
+                    case 2 -> { tx = width - 1 - x; ty = y; }
+                    case 3 -> { tx = width - 1 - x; ty = height - 1 - y; }
+                    case 4 -> { tx = x; ty = height - 1 - y; }
+                    case 5 -> { tx = y; ty = x; }
+                    case 6 -> { tx = height - 1 - y; ty = x; }
+                    case 7 -> { tx = height - 1 - y; ty = width - 1 - x; }
+                    default -> { tx = y; ty = width - 1 - x; }
+                }
+                target[ty * targetWidth + tx] = source[y * width + x];
+            }
+        }
+
+        result.setRGB(0, 0, result.getWidth(), result.getHeight(), target, 0, targetWidth);
+        return result;
+    }
+
+    private static boolean isExifHeader(byte[] data, int offset) {
+        return data[offset] == 'E' && data[offset + 1] == 'x' && data[offset + 2] == 'i' && data[offset + 3] == 'f'
+            && data[offset + 4] == 0 && data[offset + 5] == 0;
+    }
+
+    /**
+     * Looks up the orientation tag in the first image file directory of a TIFF structure.
+     */
+    private static int readOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return 1;
+        }
+        boolean littleEndian = data[tiff] == 'I' && data[tiff + 1] == 'I';
+        long ifdOffset = readInt(data, tiff + 4, littleEndian);
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > end) {
+            return 1;
+        }
+
+        int ifd = tiff + (int) ifdOffset;
+        int entries = readShort(data, ifd, littleEndian);
+        for (int k = 0; k < entries; k++) {
+            int entry = ifd + 2 + 12 * k;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, littleEndian) == ORIENTATION_TAG) {
+                int orientation = readShort(data, entry + 8, littleEndian);
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xff;
+        int b1 = data[offset + 1] & 0xff;
+        return littleEndian ? b0 | (b1 << 8) : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] data, int offset, boolean littleEndian) {
+        long high = readShort(data, offset + (littleEndian ? 2 : 0), littleEndian);
+        long low = readShort(data, offset + (littleEndian ? 0 : 2), littleEndian);
+        return (high << 16) | low;
+    }
+}
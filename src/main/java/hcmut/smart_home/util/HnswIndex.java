@@ -0,0 +1,265 @@
+package hcmut.smart_home.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Hierarchical Navigable Small World graph for approximate nearest-neighbour search over L2-normalised vectors,
+ * using the dot product (cosine similarity) as the similarity.
+ *
+ * <p>The graph supports incremental insertion and deletion. Every node also tracks the nodes linking to it, so a
+ * deletion only visits the nodes it was connected to instead of the whole graph. It is not thread-safe: callers
+ * must serialise writes and must not search while a write is in progress.</p>
+ */
+public class HnswIndex {
+
+    private static final class Node {
+        private final String id;
+        private final float[] vector;
+        private final List<List<Node>> neighbors;
+        private final List<Set<Node>> inbound;
+
+        private Node(String id, float[] vector, int level) {
+            this.id = id;
+            this.vector = vector;
+            this.neighbors = new ArrayList<>(level + 1);
+            this.inbound = new ArrayList<>(level + 1);
+            for (int l = 0; l <= level; l++) {
+                neighbors.add(new ArrayList<>());
+                inbound.add(new HashSet<>());
+            }
+        }
+
+        private int level() {
+            return neighbors.size() - 1;
+        }
+    }
+
+    private record Candidate(Node node, float similarity) {}
+
+    private static final Comparator<Candidate> BY_SIMILARITY = Comparator.comparingDouble(Candidate::similarity);
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final int m;
+    private final int maxNeighborsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private Node entryPoint;
+
+    /**
+     * @param m the number of neighbours linked per node on the upper levels (twice as many on level 0)
+     * @param efConstruction the size of the candidate list used while inserting
+     */
+    public HnswIndex(int m, int efConstruction) {
+        if (m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("m must be at least 2 and efConstruction positive");
+        }
+        this.m = m;
+        this.maxNeighborsLevel0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Inserts a vector, replacing the previous vector of the same ID.
+     */
+    public void insert(String id, float[] vector) {
+        if (nodes.containsKey(id)) {
+            remove(id);
+        }
+
+        int level = (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        Node node = new Node(id, vector, level);
+        nodes.put(id, node);
+
+        if (entryPoint == null) {
+            entryPoint = node;
+            return;
+        }
+
+        Node current = entryPoint;
+        for (int l = entryPoint.level(); l > level; l--) {
+            current = greedySearch(vector, current, l);
+        }
+
+        for (int l = Math.min(level, entryPoint.level()); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, current, efConstruction, l);
+            int maxNeighbors = l == 0 ? maxNeighborsLevel0 : m;
+            for (Candidate candidate : candidates.subList(0, Math.min(m, candidates.size()))) {
+                link(node, candidate.node(), l, maxNeighbors);
+                link(candidate.node(), node, l, maxNeighbors);
+            }
+            current = candidates.get(0).node();
+        }
+
+        if (level > entryPoint.level()) {
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Removes a vector. Nodes that linked to it are reconnected to its neighbours.
+     */
+    public void remove(String id) {
+        Node node = nodes.remove(id);
+        if (node == null) {
+            return;
+        }
+
+        for (int l = 0; l <= node.level(); l++) {
+            for (Node neighbor : node.neighbors.get(l)) {
+                neighbor.inbound.get(l).remove(node);
+            }
+
+            int maxNeighbors = l == 0 ? maxNeighborsLevel0 : m;
+            for (Node other : new ArrayList<>(node.inbound.get(l))) {
+                List<Node> links = other.neighbors.get(l);
+                links.remove(node);
+                for (Node replacement : node.neighbors.get(l)) {
+                    if (replacement != other && !links.contains(replacement)) {
+                        link(other, replacement, l, maxNeighbors);
+                    }
+                }
+            }
+        }
+
+        if (entryPoint == node) {
+            entryPoint = replacementEntryPoint(node);
+        }
+    }
+
+    /**
+     * Picks a node of the highest remaining level. A neighbour on the top level of the removed entry point has
+     * that level, otherwise the whole graph is scanned.
+     */
+    private Node replacementEntryPoint(Node removed) {
+        List<Node> top = removed.neighbors.get(removed.level());
+        if (!top.isEmpty()) {
+            return top.get(0);
+        }
+
+        Node best = null;
+        for (Node other : nodes.values()) {
+            if (best == null || other.level() > best.level()) {
+                best = other;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the IDs of approximately the {@code k} most similar vectors, most similar first.
+     *
+     * @param vector the L2-normalised query vector
+     * @param k the number of results
+     * @param ef the size of the candidate list, at least {@code k}; larger values trade latency for recall
+     */
+    public List<String> search(float[] vector, int k, int ef) {
+        if (entryPoint == null) {
+            return List.of();
+        }
+
+        Node current = entryPoint;
+        for (int l = entryPoint.level(); l > 0; l--) {
+            current = greedySearch(vector, current, l);
+        }
+
+        List<Candidate> candidates = searchLayer(vector, current, Math.max(ef, k), 0);
+        List<String> ids = new ArrayList<>(Math.min(k, candidates.size()));
+        for (Candidate candidate : candidates.subList(0, Math.min(k, candidates.size()))) {
+            ids.add(candidate.node().id);
+        }
+        return ids;
+    }
+
+    private Node greedySearch(float[] vector, Node start, int level) {
+        Node current = start;
+        float best = similarity(vector, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (Node neighbor : current.neighbors.get(level)) {
+                float similarity = similarity(vector, neighbor);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one level, returning up to {@code ef} candidates sorted by decreasing similarity.
+     */
+    private List<Candidate> searchLayer(float[] vector, Node start, int ef, int level) {
+        Set<Node> visited = new HashSet<>();
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(BY_SIMILARITY);
+
+        Candidate first = new Candidate(start, similarity(vector, start));
+        visited.add(start);
+        frontier.add(first);
+        results.add(first);
+
+        while (!frontier.isEmpty()) {
+            Candidate candidate = frontier.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+                break;
+            }
+
+            for (Node neighbor : candidate.node().neighbors.get(level)) {
+                if (!visited.add(neighbor)) {
+                    continue;
+                }
+                float similarity = similarity(vector, neighbor);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Candidate next = new Candidate(neighbor, similarity);
+                    frontier.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY.reversed());
+        return sorted;
+    }
+
+    /**
+     * Adds a link from {@code from} to {@code to}, keeping only the most similar neighbours of {@code from}.
+     */
+    private void link(Node from, Node to, int level, int maxNeighbors) {
+        List<Node> links = from.neighbors.get(level);
+        links.add(to);
+        to.inbound.get(level).add(from);
+        if (links.size() > maxNeighbors) {
+            links.sort(Comparator.comparingDouble(neighbor -> -similarity(from.vector, neighbor)));
+            List<Node> pruned = links.subList(maxNeighbors, links.size());
+            for (Node neighbor : pruned) {
+                neighbor.inbound.get(level).remove(from);
+            }
+            pruned.clear();
+        }
+    }
+
+    private static float similarity(float[] vector, Node node) {
+        return SimilarityKernel.dot(vector, node.vector);
+    }
+}
@@ -0,0 +1,74 @@
+package hcmut.smart_home.util;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a time series.
+ *
+ * <p>The first and last points are always kept. The points in between are split into {@code threshold - 2}
+ * buckets, and each bucket keeps the point forming the largest triangle with the point kept from the previous
+ * bucket and the average of the next bucket, which preserves the visual shape of the series.</p>
+ */
+public class Lttb {
+
+    private Lttb() {}
+
+    /**
+     * Selects the points to keep.
+     *
+     * @param x the point timestamps, in ascending order
+     * @param y the point values
+     * @param length the number of points in use in {@code x} and {@code y}
+     * @param threshold the maximum number of points to keep, at least 3
+     * @return the indices of the kept points, in ascending order
+     */
+    public static int[] downsample(long[] x, double[] y, int length, int threshold) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("Threshold must be at least 3");
+        }
+        if (length <= threshold) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] selected = new int[threshold];
+        double every = (double) (length - 2) / (threshold - 2);
+        int a = 0;
+        selected[0] = 0;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket, the third vertex of the triangle
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, length);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+            int nextLength = nextEnd - nextStart;
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            // Point of the current bucket forming the largest triangle
+            int start = (int) Math.floor(i * every) + 1;
+            int end = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+
+            selected[i + 1] = next;
+            a = next;
+        }
+
+        selected[threshold - 1] = length - 1;
+        return selected;
+    }
+}
@@ -0,0 +1,92 @@
+package hcmut.smart_home.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dot-product kernels for embedding similarity over primitive {@code float[]} vectors.
+ *
+ * <p>When the JVM is started with {@code --add-modules jdk.incubator.vector}, the kernels run on SIMD lanes through
+ * the Vector API; otherwise they fall back to scalar loops. For L2-normalised vectors the dot product is the
+ * cosine similarity.</p>
+ */
+public final class SimilarityKernel {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityKernel.class);
+    private static final boolean VECTORIZED = detectVectorApi();
+
+    private SimilarityKernel() {}
+
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Computes the dot product of {@code a} with {@code length} elements of {@code b} starting at {@code offset}.
+     */
+    public static float dot(float[] a, float[] b, int offset, int length) {
+        return VECTORIZED ? VectorSimilarity.dot(a, b, offset, length) : scalarDot(a, b, offset, length);
+    }
+
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vectors must have the same dimensions");
+        }
+        return dot(a, b, 0, a.length);
+    }
+
+    /**
+     * Scores one probe against {@code count} gallery vectors stored back to back.
+     *
+     * @param probe the probe vector
+     * @param gallery the gallery, vector {@code i} starting at {@code i * probe.length}
+     * @param count the number of gallery vectors to score
+     * @param scores receives the dot product with each gallery vector, at least {@code count} long
+     */
+    public static void dotBatch(float[] probe, float[] gallery, int count, float[] scores) {
+        int dimensions = probe.length;
+        for (int i = 0; i < count; i++) {
+            scores[i] = dot(probe, gallery, i * dimensions, dimensions);
+        }
+    }
+
+    /**
+     * Returns the index of the gallery vector with the largest dot product with the probe, or -1 if {@code count} is 0.
+     */
+    public static int argMaxDot(float[] probe, float[] gallery, int count) {
+        int dimensions = probe.length;
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            float score = dot(probe, gallery, i * dimensions, dimensions);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    static float scalarDot(float[] a, float[] b, int offset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+
+    private static boolean detectVectorApi() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            logger.info("Vector API not available, using scalar similarity kernels");
+            return false;
+        }
+        try {
+            VectorSimilarity.dot(new float[1], new float[1], 0, 1);
+            logger.info("Using Vector API similarity kernels ({} float lanes)", VectorSimilarity.lanes());
+            return true;
+        } catch (LinkageError e) {
+            logger.info("Vector API not usable, using scalar similarity kernels: {}", e.getMessage());
+            return false;
+        }
+    }
+}
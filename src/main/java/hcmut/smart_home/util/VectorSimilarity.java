@@ -0,0 +1,37 @@
+package hcmut.smart_home.util;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of the {@link SimilarityKernel} dot product. Only loaded once
+ * {@link SimilarityKernel} has checked that the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorSimilarity {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorSimilarity() {}
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static float dot(float[] a, float[] b, int offset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, offset + i);
+            acc = va.fma(vb, acc);
+        }
+
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,147 @@
+package hcmut.smart_home;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the face embedding server, for tests and local runs without network access.
+ *
+ * <p>{@code POST /api/extract-embedding} answers with a deterministic embedding derived from the uploaded image, so
+ * the same image always yields the same embedding. Latency, a failure rate or a number of consecutive failures can
+ * be injected to exercise the client timeouts, retries and circuit breaker.</p>
+ *
+ * <p>Usage: {@code FaceEmbeddingStubServer [port] [latencyMs] [failureRate]}, then point
+ * {@code face.embedding.server.url} to {@code http://localhost:<port>}.</p>
+ */
+public class FaceEmbeddingStubServer implements AutoCloseable {
+
+    private static final int DIMENSIONS = 512;
+
+    private final HttpServer server;
+    private final long latencyMs;
+    private final double failureRate;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger pendingFailures = new AtomicInteger();
+    private volatile int failureStatus = 503;
+
+    public FaceEmbeddingStubServer(int port, long latencyMs, double failureRate) throws IOException {
+        this.latencyMs = latencyMs;
+        this.failureRate = failureRate;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/api/extract-embedding", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Makes the next {@code count} requests fail with the given HTTP status, regardless of the failure rate.
+     */
+    public void failNext(int count, int status) {
+        failureStatus = status;
+        pendingFailures.set(count);
+    }
+
+    /**
+     * Returns the number of extraction requests received so far.
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            requests.incrementAndGet();
+            byte[] image;
+            try (InputStream in = exchange.getRequestBody()) {
+                image = imagePart(in.readAllBytes());
+            }
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            if (pendingFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                exchange.sendResponseHeaders(failureStatus, -1);
+                return;
+            }
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            byte[] response = embeddingJson(image).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Extracts the content of the single multipart part, whose boundary differs on every request.
+     */
+    private static byte[] imagePart(byte[] body) {
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        int start = text.indexOf("\r\n\r\n");
+        int end = text.lastIndexOf("\r\n--");
+        if (start < 0 || end < start + 4) {
+            return body;
+        }
+        return text.substring(start + 4, end).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String embeddingJson(byte[] image) {
+        Random random = new Random(seed(image));
+        StringJoiner values = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < DIMENSIONS; i++) {
+            values.add(Double.toString(random.nextGaussian()));
+        }
+        return "{\"embedding\":" + values + ",\"dimensions\":" + DIMENSIONS + "}";
+    }
+
+    private static long seed(byte[] image) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(image)).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5001;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        double failureRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.0;
+
+        FaceEmbeddingStubServer stub = new FaceEmbeddingStubServer(port, latencyMs, failureRate);
+        System.out.println("Face embedding stub server listening on " + stub.getUrl());
+    }
+}
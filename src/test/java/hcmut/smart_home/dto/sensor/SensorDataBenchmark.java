@@ -0,0 +1,62 @@
+package hcmut.smart_home.dto.sensor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures decoding one Realtime Database reading into {@link SensorData}, the per-reading cost of sensor
+ * evaluation. The value mixes the boxed types the Firebase SDK produces.
+ *
+ * <p>Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * -Dexec.args="-cp %classpath hcmut.smart_home.dto.sensor.SensorDataBenchmark"}, or from the IDE. Not with
+ * {@code exec:java}: JMH forks its measurement JVM with the class path of the JVM it runs in, which is Maven's.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorDataBenchmark {
+
+    private Map<String, Object> reading;
+    private SensorData data;
+
+    @Setup
+    public void setUp() {
+        reading = new HashMap<>();
+        reading.put("humidity", 65.5);
+        reading.put("light_intensity", 120L);
+        reading.put("temperature", 30.25);
+        reading.put("timestamp", 1_700_000_000L);
+        reading.put("button_for_led", 1L);
+        reading.put("button_for_fan", 2L);
+        reading.put("candel_power_for_led", 80.0);
+        data = new SensorData();
+    }
+
+    @Benchmark
+    public SensorData updateData() {
+        data.updateData(reading);
+        return data;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SensorDataBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package hcmut.smart_home.dto.sensor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class SensorDataTest {
+
+    @Test
+    void coercesLongValues() {
+        SensorData data = new SensorData();
+        data.updateData(Map.of("temperature", 30L, "button_for_led", 1L, "candel_power_for_led", 80L,
+            "timestamp", 1_700_000_000L));
+
+        assertEquals(30.0, data.getTemperature());
+        assertEquals(1L, data.getLedMode());
+        assertEquals(80L, data.getBrightness());
+        assertEquals(1_700_000_000L, data.getTimestamp());
+    }
+
+    @Test
+    void coercesDoubleValues() {
+        SensorData data = new SensorData();
+        data.updateData(Map.of("humidity", 65.5, "light_intensity", 120.25, "button_for_fan", 2.0,
+            "candel_power_for_led", 42.9));
+
+        assertEquals(65.5, data.getHumidity());
+        assertEquals(120.25, data.getLightIntensity());
+        assertEquals(2L, data.getFanMode());
+        // Integer fields truncate fractional values instead of failing
+        assertEquals(42L, data.getBrightness());
+    }
+
+    @Test
+    void coercesIntegerValues() {
+        SensorData data = new SensorData();
+        data.updateData(Map.of("temperature", 25, "humidity", 70, "button_for_fan", 3, "timestamp", 1_700_000_000));
+
+        assertEquals(25.0, data.getTemperature());
+        assertEquals(70.0, data.getHumidity());
+        assertEquals(3L, data.getFanMode());
+        assertEquals(1_700_000_000L, data.getTimestamp());
+    }
+
+    @Test
+    void keepsPreviousValuesForNonNumericOrMissingValues() {
+        SensorData data = new SensorData();
+        data.updateData(Map.of("temperature", 30.0, "button_for_led", 1L));
+
+        Map<Object, Object> update = new HashMap<>();
+        update.put("temperature", "hot");
+        update.put("button_for_led", true);
+        update.put("humidity", null);
+        update.put(42, 10.0);
+        update.put("unknown", 5.0);
+        data.updateData(update);
+
+        assertEquals(30.0, data.getTemperature());
+        assertEquals(1L, data.getLedMode());
+        assertEquals(0.0, data.getHumidity());
+    }
+
+    @Test
+    void ignoresValuesThatAreNotMaps() {
+        SensorData data = new SensorData();
+        data.updateData(Map.of("temperature", 30.0));
+
+        data.updateData("temperature");
+        data.updateData(null);
+
+        assertEquals(30.0, data.getTemperature());
+    }
+}
@@ -0,0 +1,129 @@
+package hcmut.smart_home.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import hcmut.smart_home.FaceEmbeddingStubServer;
+import hcmut.smart_home.dto.FaceEmbedding.FaceEmbedding;
+import hcmut.smart_home.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RemoteFaceEmbeddingExtractorTest {
+
+    private static final byte[] IMAGE = {1, 2, 3, 4};
+    private static final long OPEN_DURATION_MS = 200;
+
+    private FaceEmbeddingStubServer server;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FaceEmbeddingStubServer(0, 0, 0.0);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    private RemoteFaceEmbeddingExtractor extractor(int maxAttempts, int failureThreshold) {
+        RemoteFaceEmbeddingExtractor extractor = new RemoteFaceEmbeddingExtractor(new RestTemplate(), meterRegistry,
+            maxAttempts, 10, 5000, failureThreshold, OPEN_DURATION_MS);
+        ReflectionTestUtils.setField(extractor, "faceEmbeddingServerUrl", server.getUrl());
+        return extractor;
+    }
+
+    @Test
+    void retriesServerErrors() {
+        RemoteFaceEmbeddingExtractor extractor = extractor(3, 5);
+        server.failNext(2, 500);
+
+        FaceEmbedding embedding = extractor.extract(IMAGE, "face.jpg");
+
+        assertEquals(512, embedding.getDimensions());
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2.0, meterRegistry.get("face.embedding.retries").counter().count());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        RemoteFaceEmbeddingExtractor extractor = extractor(2, 5);
+        server.failNext(5, 503);
+
+        assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        RemoteFaceEmbeddingExtractor extractor = extractor(3, 1);
+        server.failNext(1, 400);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+
+        assertFalse(e instanceof ServiceUnavailableException);
+        assertEquals(1, server.getRequestCount());
+        // The server answered, so the circuit stays closed
+        extractor.extract(IMAGE, "face.jpg");
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void opensCircuitAfterThresholdAndRejectsWith503() {
+        RemoteFaceEmbeddingExtractor extractor = extractor(1, 3);
+        server.failNext(3, 503);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+        }
+        assertEquals(3, server.getRequestCount());
+
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+            () -> extractor.extract(IMAGE, "face.jpg"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals(3, server.getRequestCount());
+        assertEquals(1.0, meterRegistry.get("face.embedding.circuit.open").gauge().value());
+    }
+
+    @Test
+    void closesCircuitAfterSuccessfulTrial() throws InterruptedException {
+        RemoteFaceEmbeddingExtractor extractor = extractor(1, 1);
+        server.failNext(1, 503);
+
+        assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+        assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+        assertEquals(1, server.getRequestCount());
+
+        Thread.sleep(OPEN_DURATION_MS + 50);
+        extractor.extract(IMAGE, "face.jpg");
+        extractor.extract(IMAGE, "face.jpg");
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(0.0, meterRegistry.get("face.embedding.circuit.open").gauge().value());
+    }
+
+    @Test
+    void reopensCircuitAfterFailedTrial() throws InterruptedException {
+        RemoteFaceEmbeddingExtractor extractor = extractor(1, 1);
+        server.failNext(1, 503);
+        assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+
+        Thread.sleep(OPEN_DURATION_MS + 50);
+        server.failNext(1, 503);
+        assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+        assertThrows(ServiceUnavailableException.class, () -> extractor.extract(IMAGE, "face.jpg"));
+
+        assertEquals(2, server.getRequestCount());
+    }
+}
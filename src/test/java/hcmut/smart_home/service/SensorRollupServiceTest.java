@@ -0,0 +1,24 @@
+package hcmut.smart_home.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+public class SensorRollupServiceTest {
+
+    @Test
+    void documentIdsDoNotDependOnTheDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            // Lower-casing "MINUTE" in Turkish gives a dotless i
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            assertEquals("minute", SensorRollupService.Resolution.MINUTE.key());
+            assertEquals("s1_minute_60", SensorRollupService.documentId("s1", SensorRollupService.Resolution.MINUTE, 60));
+            assertEquals("s1_hour_3600", SensorRollupService.documentId("s1", SensorRollupService.Resolution.HOUR, 3600));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package hcmut.smart_home.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.cloud.firestore.Blob;
+
+public class EmbeddingCodecTest {
+
+    private static float[] randomEmbedding(int dimensions) {
+        Random random = new Random(7);
+        float[] embedding = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+
+    @Test
+    void float32RoundTripIsExact() {
+        float[] embedding = randomEmbedding(512);
+
+        Blob packed = EmbeddingCodec.encode(embedding, EmbeddingCodec.Format.FLOAT32);
+
+        assertEquals(1 + 4 * 512, packed.toBytes().length);
+        assertArrayEquals(embedding, EmbeddingCodec.decode(packed), 0f);
+    }
+
+    @Test
+    void int8RoundTripIsWithinHalfAStep() {
+        float[] embedding = randomEmbedding(512);
+        float maxAbs = 0f;
+        for (float value : embedding) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float step = maxAbs / 127f;
+
+        Blob packed = EmbeddingCodec.encode(embedding, EmbeddingCodec.Format.INT8);
+        float[] decoded = EmbeddingCodec.decode(packed);
+
+        assertEquals(1 + 4 + 512, packed.toBytes().length);
+        assertArrayEquals(embedding, decoded, step / 2 + 1e-6f);
+    }
+
+    @Test
+    void int8KeepsCosineSimilarity() {
+        float[] embedding = randomEmbedding(512);
+        float[] decoded = EmbeddingCodec.decode(EmbeddingCodec.encode(embedding, EmbeddingCodec.Format.INT8));
+
+        double dot = 0, norm1 = 0, norm2 = 0;
+        for (int i = 0; i < embedding.length; i++) {
+            dot += embedding[i] * decoded[i];
+            norm1 += embedding[i] * embedding[i];
+            norm2 += decoded[i] * decoded[i];
+        }
+        assertEquals(1.0, dot / Math.sqrt(norm1 * norm2), 1e-3);
+    }
+
+    @Test
+    void int8EncodesZeroVector() {
+        float[] decoded = EmbeddingCodec.decode(EmbeddingCodec.encode(new float[8], EmbeddingCodec.Format.INT8));
+
+        assertArrayEquals(new float[8], decoded, 0f);
+    }
+
+    @Test
+    void decodesLegacyArrays() {
+        List<Object> legacy = new ArrayList<>(List.of(0.5, -1.25, 3L));
+
+        assertArrayEquals(new float[]{0.5f, -1.25f, 3f}, EmbeddingCodec.decode(legacy), 0f);
+
+        legacy.add("x");
+        assertNull(EmbeddingCodec.decode(legacy));
+    }
+
+    @Test
+    void rejectsInvalidBlobs() {
+        assertNull(EmbeddingCodec.decode(Blob.fromBytes(new byte[0])));
+        assertNull(EmbeddingCodec.decode(Blob.fromBytes(new byte[]{9, 0, 0, 0, 0})));
+        assertNull(EmbeddingCodec.decode(Blob.fromBytes(new byte[]{1, 0, 0})));
+    }
+
+    @Test
+    void parsesFormatNamesIndependentlyOfTheDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            // Upper-casing "int8" in Turkish gives a dotted capital I
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            assertEquals(EmbeddingCodec.Format.INT8, EmbeddingCodec.Format.of(" int8 "));
+            assertEquals(EmbeddingCodec.Format.FLOAT32, EmbeddingCodec.Format.of("float32"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package hcmut.smart_home.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class HnswIndexTest {
+
+    private static final int DIMENSIONS = 64;
+    private static final int K = 10;
+    private static final int EF_SEARCH = 64;
+
+    @Test
+    void searchMatchesBruteForce() {
+        Random random = new Random(1);
+        Map<String, float[]> vectors = randomVectors(random, 2000);
+        HnswIndex index = new HnswIndex(16, 200);
+        vectors.forEach(index::insert);
+
+        assertEquals(vectors.size(), index.size());
+        assertTrue(recall(index, vectors, random) >= 0.95);
+    }
+
+    @Test
+    void removedVectorsAreNotReturnedAndRecallHolds() {
+        Random random = new Random(2);
+        Map<String, float[]> vectors = randomVectors(random, 2000);
+        HnswIndex index = new HnswIndex(16, 200);
+        vectors.forEach(index::insert);
+
+        Set<String> removed = new HashSet<>();
+        for (String id : new ArrayList<>(vectors.keySet())) {
+            if (random.nextBoolean()) {
+                index.remove(id);
+                vectors.remove(id);
+                removed.add(id);
+            }
+        }
+
+        assertEquals(vectors.size(), index.size());
+        for (int q = 0; q < 50; q++) {
+            for (String id : index.search(randomVector(random), K, EF_SEARCH)) {
+                assertFalse(removed.contains(id));
+            }
+        }
+        assertTrue(recall(index, vectors, random) >= 0.9);
+    }
+
+    @Test
+    void insertReplacesExistingVector() {
+        Random random = new Random(3);
+        Map<String, float[]> vectors = randomVectors(random, 500);
+        HnswIndex index = new HnswIndex(16, 200);
+        vectors.forEach(index::insert);
+
+        float[] replacement = randomVector(random);
+        index.insert("v0", replacement);
+        vectors.put("v0", replacement);
+
+        assertEquals(vectors.size(), index.size());
+        assertEquals("v0", index.search(replacement, 1, EF_SEARCH).get(0));
+    }
+
+    @Test
+    void removingEveryVectorEmptiesTheIndex() {
+        Random random = new Random(4);
+        Map<String, float[]> vectors = randomVectors(random, 200);
+        HnswIndex index = new HnswIndex(8, 50);
+        vectors.forEach(index::insert);
+
+        vectors.keySet().forEach(index::remove);
+
+        assertEquals(0, index.size());
+        assertTrue(index.search(randomVector(random), K, EF_SEARCH).isEmpty());
+    }
+
+    /**
+     * Average fraction of the exact top {@code K} found by the graph over random queries.
+     */
+    private static double recall(HnswIndex index, Map<String, float[]> vectors, Random random) {
+        int queries = 100;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            List<String> exact = vectors.entrySet().stream()
+                .sorted(Comparator.comparingDouble(e -> -SimilarityKernel.dot(query, e.getValue())))
+                .limit(K)
+                .map(Map.Entry::getKey)
+                .toList();
+            Set<String> approximate = new HashSet<>(index.search(query, K, EF_SEARCH));
+            found += (int) exact.stream().filter(approximate::contains).count();
+        }
+        return (double) found / (queries * K);
+    }
+
+    private static Map<String, float[]> randomVectors(Random random, int count) {
+        Map<String, float[]> vectors = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            vectors.put("v" + i, randomVector(random));
+        }
+        return vectors;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
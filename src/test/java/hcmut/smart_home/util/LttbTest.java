@@ -0,0 +1,65 @@
+package hcmut.smart_home.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LttbTest {
+
+    private static long[] range(int length) {
+        long[] x = new long[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = i;
+        }
+        return x;
+    }
+
+    @Test
+    void keepsThePointsFormingTheLargestTriangles() {
+        double[] y = {0, 1, 0, 5, 0, 1, 0, -4, 0, 0};
+
+        // Buckets [1, 5) and [5, 9): the peak at 3 and the trough at 7 stand out
+        assertArrayEquals(new int[]{0, 3, 7, 9}, Lttb.downsample(range(10), y, 10, 4));
+    }
+
+    @Test
+    void keepsTheLargestDeviationWithASingleBucket() {
+        double[] y = {0, 2, 5, 1, 0};
+
+        assertArrayEquals(new int[]{0, 2, 4}, Lttb.downsample(range(5), y, 5, 3));
+    }
+
+    @Test
+    void returnsAllPointsInUseUnderTheThreshold() {
+        double[] y = {3, 1, 4, 1, 5, 9, 2, 6};
+
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, Lttb.downsample(range(8), y, 5, 10));
+        assertArrayEquals(new int[0], Lttb.downsample(range(8), y, 0, 10));
+    }
+
+    @Test
+    void keepsFirstAndLastPointsInOrder() {
+        int length = 1000;
+        double[] y = new double[length];
+        for (int i = 0; i < length; i++) {
+            y[i] = Math.sin(i / 25.0) * 10;
+        }
+
+        int[] selected = Lttb.downsample(range(length), y, length, 50);
+
+        assertEquals(50, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(length - 1, selected[selected.length - 1]);
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i] > selected[i - 1]);
+        }
+    }
+
+    @Test
+    void rejectsThresholdsBelowThree() {
+        assertThrows(IllegalArgumentException.class, () -> Lttb.downsample(range(10), new double[10], 10, 2));
+    }
+}